@@ -0,0 +1,372 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet;
+
+import java.text.MessageFormat;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>A log that takes messages off the threads that log them.  Messages
+ * are published into a bounded ring of preallocated records, without
+ * locking, and a background thread formats them and writes them to the
+ * log of a {@link ServletContext}, so a request that logs does not wait
+ * for the log to be written.</p>
+ *
+ * <p>A container that uses it implements
+ * {@link ServletContext#log(String)} and
+ * {@link ServletContext#log(String, Throwable)} by calling
+ * {@link #log(String, String, Throwable)}, writing to its own log from
+ * the target context, and binds it as the context attribute named
+ * {@link #CONTEXT_ATTRIBUTE}, through which
+ * {@link GenericServlet#log(String)} finds it and passes the servlet
+ * name along with the message, instead of prepending it.</p>
+ *
+ * <p>When the ring is full, messages are either dropped, the number of
+ * messages dropped being logged later, or the threads that log them
+ * wait for room, depending on the {@link OverflowPolicy}.  A stack
+ * trace logged again for the same servlet, throwable class and
+ * throwing frame within the trace interval is replaced by a one-line
+ * summary of the throwable.</p>
+ *
+ * <p>This class is safe for use by multiple threads.</p>
+ *
+ * @since Servlet 4.0
+ */
+public final class AsyncServletLog implements AutoCloseable {
+
+    /**
+     * What to do with a message that is logged while the ring is full.
+     */
+    public enum OverflowPolicy {
+        /** The message is dropped, and counted. */
+        DROP,
+        /** The thread that logs the message waits until there is room. */
+        BLOCK
+    }
+
+    /**
+     * The name of the context attribute to which the log of a context is
+     * bound.
+     */
+    public static final String CONTEXT_ATTRIBUTE =
+        "javax.servlet.AsyncServletLog";
+
+    /** The default number of records of the ring. */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /** The default trace interval, one minute. */
+    public static final long DEFAULT_TRACE_INTERVAL = 60000;
+
+    private static final String LSTRING_FILE = "javax.servlet.LocalStrings";
+    private static final ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+
+    // the number of distinct stack traces whose last printing is kept
+    private static final int MAX_TRACE_KEYS = 1024;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final ServletContext target;
+    private final OverflowPolicy policy;
+    private final long traceIntervalNanos;
+
+    private final LogRecord[] ring;
+    private final int mask;
+
+    // the next sequence number to claim, and the next one to write; the
+    // records below the latter are free
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long written;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Thread writer;
+    private volatile boolean idle;
+    private volatile boolean closed;
+
+    // when the stack traces were last printed, only used by the writer
+    private final Map<String, Long> tracesPrinted = new HashMap<>();
+
+    /**
+     * Constructs a log writing to a context, with a ring of the default
+     * capacity, that drops messages when it is full.
+     *
+     * @param target the context whose log the messages are written to
+     */
+    public AsyncServletLog(ServletContext target) {
+        this(target, DEFAULT_CAPACITY, OverflowPolicy.DROP, DEFAULT_TRACE_INTERVAL);
+    }
+
+    /**
+     * Constructs a log writing to a context.
+     *
+     * @param target the context whose log the messages are written to
+     * @param capacity the number of records of the ring, rounded up to
+     * a power of two
+     * @param policy what to do with messages logged while the ring is
+     * full
+     * @param traceInterval the time, in milliseconds, during which a
+     * stack trace is printed only once per servlet, throwable class and
+     * throwing frame, or 0 to print all stack traces
+     *
+     * @throws IllegalArgumentException if <code>capacity</code> is not
+     * positive or greater than 2^30, or <code>traceInterval</code> is
+     * negative
+     */
+    public AsyncServletLog(ServletContext target, int capacity,
+                           OverflowPolicy policy, long traceInterval) {
+        if (target == null || policy == null) {
+            throw new NullPointerException();
+        }
+        if (capacity <= 0 || capacity > (1 << 30) || traceInterval < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.target = target;
+        this.policy = policy;
+        this.traceIntervalNanos = TimeUnit.MILLISECONDS.toNanos(traceInterval);
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        if (capacity == 1) {
+            size = 1;
+        }
+        ring = new LogRecord[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new LogRecord();
+        }
+        mask = size - 1;
+
+        writer = new Thread(this::writeLoop, "AsyncServletLog writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Logs a message.
+     *
+     * @param msg the message
+     */
+    public void log(String msg) {
+        log(null, msg, null);
+    }
+
+    /**
+     * Logs a message and the stack trace of a throwable.
+     *
+     * @param message the message
+     * @param throwable the throwable, or <code>null</code>
+     */
+    public void log(String message, Throwable throwable) {
+        log(null, message, throwable);
+    }
+
+    /**
+     * Logs a message of a servlet, which is written prepended by the
+     * servlet's name as {@link GenericServlet#log(String)} does, and the
+     * stack trace of a throwable.
+     *
+     * @param servletName the name of the servlet, or <code>null</code>
+     * if the message is not logged by a servlet
+     * @param message the message
+     * @param throwable the throwable, or <code>null</code>
+     */
+    public void log(String servletName, String message, Throwable throwable) {
+        long seq = claim();
+        if (seq < 0) {
+            return;
+        }
+        LogRecord r = ring[(int) seq & mask];
+        r.servletName = servletName;
+        r.message = message;
+        r.throwable = throwable;
+        r.sequence = seq;
+        if (idle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Gets the number of messages dropped because the ring was full.
+     *
+     * @return the number of messages dropped so far
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes the messages logged so far, and stops the background
+     * thread.  Messages logged afterwards are dropped.  If the calling
+     * thread is interrupted while the messages are written, it returns
+     * with its interrupt status set.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Claims the record of a message, returning its sequence number, or
+     * -1 if the message is dropped.
+     */
+    private long claim() {
+        for (;;) {
+            if (closed) {
+                dropped.incrementAndGet();
+                return -1;
+            }
+            long seq = claimed.get();
+            if (seq - written >= ring.length) {
+                if (policy == OverflowPolicy.DROP) {
+                    dropped.incrementAndGet();
+                    return -1;
+                }
+                if (idle) {
+                    LockSupport.unpark(writer);
+                }
+                LockSupport.parkNanos(this, 1000);
+                continue;
+            }
+            if (claimed.compareAndSet(seq, seq + 1)) {
+                return seq;
+            }
+        }
+    }
+
+    private void writeLoop() {
+        long reportedDrops = 0;
+        for (;;) {
+            long seq = written;
+            LogRecord r = ring[(int) seq & mask];
+            if (r.sequence == seq) {
+                String servletName = r.servletName;
+                String message = r.message;
+                Throwable throwable = r.throwable;
+                r.servletName = null;
+                r.message = null;
+                r.throwable = null;
+                written = seq + 1;
+                write(servletName, message, throwable);
+                continue;
+            }
+
+            long drops = dropped.get();
+            if (drops != reportedDrops) {
+                write(null, format("log.dropped", drops - reportedDrops), null);
+                reportedDrops = drops;
+                continue;
+            }
+            if (closed && claimed.get() == seq) {
+                return;
+            }
+            idle = true;
+            if (r.sequence != seq && !closed) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            idle = false;
+        }
+    }
+
+    private void write(String servletName, String message, Throwable throwable) {
+        String msg = (servletName == null) ? message : servletName + ": " + message;
+        try {
+            if (throwable == null) {
+                target.log(msg);
+            } else if (printTrace(servletName, throwable)) {
+                target.log(msg, throwable);
+            } else {
+                target.log(format("log.traceSuppressed", msg, throwable));
+            }
+        } catch (RuntimeException e) {
+            // the writer must survive a failing log
+        }
+    }
+
+    /*
+     * Tests whether the stack trace of a throwable is to be printed, or
+     * has been printed for the same servlet, throwable class and
+     * throwing frame within the trace interval.
+     */
+    private boolean printTrace(String servletName, Throwable throwable) {
+        if (traceIntervalNanos == 0) {
+            return true;
+        }
+        StackTraceElement[] trace = throwable.getStackTrace();
+        String key = servletName + '|' + throwable.getClass().getName() + '|'
+            + (trace.length > 0 ? trace[0] : "");
+        long now = System.nanoTime();
+        Long last = tracesPrinted.get(key);
+        if (last != null && now - last < traceIntervalNanos) {
+            return false;
+        }
+        if (tracesPrinted.size() >= MAX_TRACE_KEYS) {
+            tracesPrinted.clear();
+        }
+        tracesPrinted.put(key, now);
+        return true;
+    }
+
+    private static String format(String key, Object... args) {
+        return MessageFormat.format(lStrings.getString(key), args);
+    }
+}
+
+
+// file private
+final class LogRecord {
+
+    String servletName;
+    String message;
+    Throwable throwable;
+
+    // the sequence number of the message, written last by the logging
+    // thread, which publishes the other fields to the writer
+    volatile long sequence = -1;
+}
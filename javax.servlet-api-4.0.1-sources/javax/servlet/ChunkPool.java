@@ -0,0 +1,105 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>A pool of the fixed-size byte arrays in which
+ * {@link RequestBodyAggregator} collects request bodies.  At most
+ * {@value #MAX_POOLED_CHUNKS} chunks are kept; chunks released beyond
+ * that are left to the garbage collector, as are arrays that are not of
+ * the size of a chunk.</p>
+ *
+ * <p>A chunk must not be used after it has been released.  This class
+ * is safe for use by multiple threads.</p>
+ */
+final class ChunkPool {
+
+    /** The size of the chunks, in bytes. */
+    static final int CHUNK_SIZE = 8192;
+
+    /** The largest number of chunks kept in the pool. */
+    static final int MAX_POOLED_CHUNKS = 256;
+
+    private static final ConcurrentLinkedQueue<byte[]> chunks =
+        new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    private ChunkPool() { }
+
+    /**
+     * Takes a chunk from the pool, or allocates one if it is empty.  The
+     * contents of the chunk are undefined.
+     *
+     * @return a chunk of {@value #CHUNK_SIZE} bytes
+     */
+    static byte[] take() {
+        byte[] c = chunks.poll();
+        if (c == null) {
+            return new byte[CHUNK_SIZE];
+        }
+        pooled.decrementAndGet();
+        return c;
+    }
+
+    /**
+     * Returns chunks taken with {@link #take} to the pool, and clears the
+     * list.
+     *
+     * @param released the chunks to return
+     */
+    static void release(List<byte[]> released) {
+        for (byte[] c : released) {
+            if (c.length != CHUNK_SIZE) {
+                continue;
+            }
+            if (pooled.incrementAndGet() <= MAX_POOLED_CHUNKS) {
+                chunks.offer(c);
+            } else {
+                pooled.decrementAndGet();
+            }
+        }
+        released.clear();
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The filters that apply to the requests of one servlet mapping for one
+ * {@link DispatcherType}, in the order they are invoked, followed by the
+ * servlet itself.  Instances are immutable and obtained from a
+ * {@link FilterChainCompiler}; they are walked by a
+ * {@link FilterChainCursor}.
+ *
+ * <p>Most filters are known to apply, or not to apply, to every request
+ * of a servlet mapping.  A filter mapped to a URL pattern that only
+ * covers part of the mapping, for example <code>/api/admin/*</code> for a
+ * servlet mapped to <code>/api/*</code>, is kept with the patterns that
+ * are tested against the path of each request.</p>
+ *
+ * @since Servlet 4.0
+ */
+public final class CompiledFilterChain {
+
+    final Filter[] filters;
+
+    // the URL patterns one of which must match the path for a filter to
+    // apply, or null if it always applies
+    final String[][] conditions;
+
+    // the earlier conditional entries for the same filter, which is only
+    // invoked once, or null if there are none
+    final int[][] duplicates;
+
+    final Servlet servlet;
+
+    private final boolean pathDependent;
+
+    CompiledFilterChain(Servlet servlet, Filter[] filters,
+                        String[][] conditions, int[][] duplicates) {
+        this.servlet = servlet;
+        this.filters = filters;
+        this.conditions = conditions;
+        this.duplicates = duplicates;
+        boolean dependent = false;
+        for (String[] c : conditions) {
+            dependent |= c != null;
+        }
+        this.pathDependent = dependent;
+    }
+
+    /**
+     * Gets the servlet at the end of this chain.
+     *
+     * @return the servlet invoked after the filters
+     */
+    public Servlet getServlet() {
+        return servlet;
+    }
+
+    /**
+     * Tests whether the filters invoked depend on the path of the
+     * request, rather than only on its servlet mapping.
+     *
+     * @return <code>true</code> if some filter is only invoked for the
+     * requests whose path matches one of its URL patterns
+     */
+    public boolean isPathDependent() {
+        return pathDependent;
+    }
+
+    /**
+     * Gets the filters invoked for a request, in order.
+     *
+     * @param path the path of the request within the context, that is
+     * its servlet path followed by its path info, or <code>null</code>
+     * for a dispatch that has no path
+     *
+     * @return a new array of the filters that apply to the request
+     */
+    public Filter[] getFilters(String path) {
+        Filter[] result = new Filter[filters.length];
+        int n = 0;
+        for (int i = 0; i < filters.length; i++) {
+            if (applies(i, path)) {
+                result[n++] = filters[i];
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Invokes this chain for a request.  This is a shortcut for
+     * <code>new FilterChainCursor().reset(this, path).doFilter(request,
+     * response)</code>; a container that processes many requests
+     * should reuse its cursors instead.
+     *
+     * @param request the request to pass along the chain
+     * @param response the response to pass along the chain
+     * @param path the path of the request within the context, or
+     * <code>null</code> for a dispatch that has no path
+     *
+     * @throws IOException if an I/O related error has occurred during
+     * the processing
+     * @throws ServletException if a filter or the servlet has thrown it
+     */
+    public void doFilter(ServletRequest request, ServletResponse response,
+                         String path) throws IOException, ServletException {
+        new FilterChainCursor().reset(this, path).doFilter(request, response);
+    }
+
+    /*
+     * Tests whether the filter at the given index is invoked for a
+     * request with the given path.  Nothing is allocated.
+     */
+    boolean applies(int index, String path) {
+        String[] c = conditions[index];
+        if (c != null && !FilterChainCompiler.matchesAny(c, path)) {
+            return false;
+        }
+        int[] d = duplicates[index];
+        if (d != null) {
+            for (int i = 0; i < d.length; i++) {
+                if (FilterChainCompiler.matchesAny(conditions[d[i]], path)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
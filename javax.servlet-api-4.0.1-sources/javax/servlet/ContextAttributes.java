@@ -0,0 +1,404 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>The attributes of a {@link ServletContext}, with the notification
+ * of its {@link ServletContextAttributeListener}s, for containers to
+ * implement {@link ServletContext#getAttribute},
+ * {@link ServletContext#setAttribute} and
+ * {@link ServletContext#removeAttribute} with.</p>
+ *
+ * <p>The attributes are kept in a concurrent map, so no lock is taken
+ * to read them.  Once the web application has started, {@link #freeze}
+ * takes a snapshot of them that later reads are served from, until the
+ * next change.  No event is created when no listener is registered.</p>
+ *
+ * <p>Listeners are normally notified by the thread that changes an
+ * attribute, before the change method returns.  A store constructed
+ * with an <code>Executor</code> notifies them on that executor instead,
+ * so that changing an attribute does not wait for the listeners: the
+ * changes made to an attribute between two notifications are then
+ * coalesced into one event, from its value before the first change to
+ * its value after the last, and events for different attributes may be
+ * delivered in any order.  For example, an attribute that is added and
+ * then replaced is notified as added with its last value, and one that
+ * is added then removed is not notified at all.</p>
+ *
+ * <p>This class is safe for use by multiple threads.</p>
+ *
+ * @since Servlet 4.0
+ */
+public final class ContextAttributes {
+
+    private static final ServletContextAttributeListener[] NO_LISTENERS =
+        new ServletContextAttributeListener[0];
+
+    private static final int ADDED = 0;
+    private static final int REPLACED = 1;
+    private static final int REMOVED = 2;
+
+    private final ServletContext context;
+    private final Executor executor;
+
+    private final ConcurrentHashMap<String, Object> attributes =
+        new ConcurrentHashMap<>();
+    private volatile Map<String, Object> snapshot;
+    // incremented by each change, before the snapshot is dropped
+    private final AtomicLong changes = new AtomicLong();
+
+    private volatile ServletContextAttributeListener[] listeners = NO_LISTENERS;
+
+    // the changes not yet notified when notifying asynchronously
+    private final ConcurrentHashMap<String, PendingChange> pending;
+    private final AtomicBoolean notifying;
+    private final Runnable notifier;
+
+    /**
+     * Constructs an empty store whose listeners are notified by the
+     * thread that changes an attribute.
+     *
+     * @param context the context that is the source of the events
+     */
+    public ContextAttributes(ServletContext context) {
+        this(context, null);
+    }
+
+    /**
+     * Constructs an empty store whose listeners are notified of
+     * coalesced changes by an executor.
+     *
+     * @param context the context that is the source of the events
+     * @param executor the executor that notifies the listeners, or
+     * <code>null</code> for them to be notified by the thread that
+     * changes an attribute
+     */
+    public ContextAttributes(ServletContext context, Executor executor) {
+        if (context == null) {
+            throw new NullPointerException();
+        }
+        this.context = context;
+        this.executor = executor;
+        if (executor != null) {
+            pending = new ConcurrentHashMap<>();
+            notifying = new AtomicBoolean();
+            notifier = this::notifyPending;
+        } else {
+            pending = null;
+            notifying = null;
+            notifier = null;
+        }
+    }
+
+    /**
+     * Registers a listener.
+     *
+     * @param listener the listener to notify of changes
+     */
+    public synchronized void addListener(ServletContextAttributeListener listener) {
+        if (listener == null) {
+            throw new NullPointerException();
+        }
+        ServletContextAttributeListener[] l = listeners;
+        ServletContextAttributeListener[] n = new ServletContextAttributeListener[l.length + 1];
+        System.arraycopy(l, 0, n, 0, l.length);
+        n[l.length] = listener;
+        listeners = n;
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener the listener no longer to notify
+     *
+     * @return <code>true</code> if the listener was registered
+     */
+    public synchronized boolean removeListener(ServletContextAttributeListener listener) {
+        ServletContextAttributeListener[] l = listeners;
+        for (int i = 0; i < l.length; i++) {
+            if (l[i] == listener) {
+                ServletContextAttributeListener[] n =
+                    new ServletContextAttributeListener[l.length - 1];
+                System.arraycopy(l, 0, n, 0, i);
+                System.arraycopy(l, i + 1, n, i, l.length - i - 1);
+                listeners = (n.length == 0) ? NO_LISTENERS : n;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Takes a snapshot of the attributes, from which they are read until
+     * one of them changes.  Meant to be called once the web application
+     * has started, after which attributes seldom change.  No snapshot is
+     * taken if an attribute changes meanwhile.
+     */
+    public void freeze() {
+        long c = changes.get();
+        snapshot = Collections.unmodifiableMap(new HashMap<>(attributes));
+        if (changes.get() != c) {
+            // the copy may have missed the change
+            snapshot = null;
+        }
+    }
+
+    /**
+     * Returns the attribute with the given name.
+     * See {@link ServletContext#getAttribute}.
+     *
+     * @param name a <code>String</code> specifying the name of the
+     * attribute
+     *
+     * @return an <code>Object</code> containing the value of the
+     * attribute, or <code>null</code> if no attribute exists matching
+     * the given name
+     *
+     * @throws NullPointerException if the argument {@code name} is
+     * {@code null}
+     */
+    public Object getAttribute(String name) {
+        if (name == null) {
+            throw new NullPointerException();
+        }
+        Map<String, Object> s = snapshot;
+        return (s != null) ? s.get(name) : attributes.get(name);
+    }
+
+    /**
+     * Returns the names of the attributes.
+     * See {@link ServletContext#getAttributeNames}.
+     *
+     * @return an <code>Enumeration</code> of attribute names
+     */
+    public Enumeration<String> getAttributeNames() {
+        Map<String, Object> s = snapshot;
+        return Collections.enumeration((s != null) ? s.keySet()
+            : attributes.keySet());
+    }
+
+    /**
+     * Binds an object to a given attribute name, and notifies the
+     * listeners.  See {@link ServletContext#setAttribute}.
+     *
+     * @param name a <code>String</code> specifying the name of the
+     * attribute
+     * @param object an <code>Object</code> representing the attribute
+     * to be bound, or <code>null</code> to remove the attribute
+     *
+     * @throws NullPointerException if the name parameter is {@code null}
+     */
+    public void setAttribute(String name, Object object) {
+        if (name == null) {
+            throw new NullPointerException();
+        }
+        if (object == null) {
+            removeAttribute(name);
+            return;
+        }
+        boolean notify = listeners.length > 0;
+        Object old;
+        if (notify && pending != null) {
+            old = changeAndRecord(name, object);
+        } else {
+            old = attributes.put(name, object);
+        }
+        changes.incrementAndGet();
+        snapshot = null;
+        if (!notify) {
+            return;
+        }
+        if (pending != null) {
+            scheduleNotification();
+        } else {
+            if (old == null) {
+                notify(ADDED, new ServletContextAttributeEvent(context, name, object));
+            } else {
+                notify(REPLACED, new ServletContextAttributeEvent(context, name, old));
+            }
+        }
+    }
+
+    /**
+     * Removes the attribute with the given name, and notifies the
+     * listeners.  See {@link ServletContext#removeAttribute}.
+     *
+     * @param name a <code>String</code> specifying the name of the
+     * attribute to be removed
+     */
+    public void removeAttribute(String name) {
+        if (name == null) {
+            return;
+        }
+        boolean notify = listeners.length > 0;
+        Object old;
+        if (notify && pending != null) {
+            old = changeAndRecord(name, null);
+        } else {
+            old = attributes.remove(name);
+        }
+        if (old == null) {
+            return;
+        }
+        changes.incrementAndGet();
+        snapshot = null;
+        if (!notify) {
+            return;
+        }
+        if (pending != null) {
+            scheduleNotification();
+        } else {
+            notify(REMOVED, new ServletContextAttributeEvent(context, name, old));
+        }
+    }
+
+    private void notify(int type, ServletContextAttributeEvent event) {
+        for (ServletContextAttributeListener l : listeners) {
+            switch (type) {
+            case ADDED:
+                l.attributeAdded(event);
+                break;
+            case REPLACED:
+                l.attributeReplaced(event);
+                break;
+            default:
+                l.attributeRemoved(event);
+                break;
+            }
+        }
+    }
+
+    /*
+     * Changes an attribute and records the change, atomically for that
+     * attribute, so that the recorded changes of an attribute are in
+     * the order they were made.  Returns the previous value.
+     */
+    private Object changeAndRecord(final String name, final Object value) {
+        final Object[] old = new Object[1];
+        attributes.compute(name, (k, previous) -> {
+            old[0] = previous;
+            if (previous != null || value != null) {
+                pending.compute(name, (n, p) -> {
+                    if (p == null) {
+                        return new PendingChange(previous, value);
+                    }
+                    p.after = value;
+                    return p;
+                });
+            }
+            return value;
+        });
+        return old[0];
+    }
+
+    private void scheduleNotification() {
+        if (notifying.compareAndSet(false, true)) {
+            boolean scheduled = false;
+            try {
+                executor.execute(notifier);
+                scheduled = true;
+            } finally {
+                if (!scheduled) {
+                    // left pending for the next change to schedule
+                    notifying.set(false);
+                }
+            }
+        }
+    }
+
+    /*
+     * Notifies the pending changes.  Only one thread at a time runs
+     * this, so the changes of an attribute are notified in order.
+     */
+    private void notifyPending() {
+        do {
+            try {
+                notifyPendingChanges();
+            } finally {
+                notifying.set(false);
+            }
+        } while (!pending.isEmpty() && notifying.compareAndSet(false, true));
+    }
+
+    private void notifyPendingChanges() {
+        for (String name : pending.keySet()) {
+            PendingChange p = pending.remove(name);
+            if (p == null || listeners.length == 0) {
+                continue;
+            }
+            try {
+                if (p.before == null && p.after != null) {
+                    notify(ADDED, new ServletContextAttributeEvent(context, name, p.after));
+                } else if (p.before != null && p.after == null) {
+                    notify(REMOVED, new ServletContextAttributeEvent(context, name, p.before));
+                } else if (p.before != null) {
+                    notify(REPLACED, new ServletContextAttributeEvent(context, name, p.before));
+                }
+            } catch (RuntimeException e) {
+                context.log(e.getMessage(), e);
+            }
+        }
+    }
+}
+
+
+// file private
+final class PendingChange {
+
+    final Object before;
+
+    // only changed within the compute of the map of pending changes
+    Object after;
+
+    PendingChange(Object before, Object after) {
+        this.before = before;
+        this.after = after;
+    }
+}
@@ -0,0 +1,499 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Works out, once, which filters apply to the requests of a servlet
+ * mapping.
+ *
+ * <p>Filter mappings are added as they are to a
+ * {@link FilterRegistration}.  The first time a servlet mapping is
+ * looked up, the compiler matches all filter mappings against it and
+ * builds a {@link CompiledFilterChain} for each {@link DispatcherType},
+ * which is returned by later lookups until the filter mappings change.
+ * Looking up a chain that has been compiled allocates nothing.</p>
+ *
+ * <p>Filters are ordered as the Servlet specification requires: those
+ * mapped by URL pattern come before those mapped by servlet name, in
+ * the order their mappings were added, mappings added with
+ * <code>isMatchAfter</code> coming after the others of their kind.  A
+ * filter is invoked at most once per chain.</p>
+ *
+ * <p>This class is safe for use by multiple threads.</p>
+ *
+ * @see FilterChainCursor
+ *
+ * @since Servlet 4.0
+ */
+public final class FilterChainCompiler {
+
+    private static final String LSTRING_FILE = "javax.servlet.LocalStrings";
+    private static final ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+
+    private static final DispatcherType[] DISPATCHER_TYPES =
+        DispatcherType.values();
+
+    private static final int NEVER = 0;
+    private static final int DEPENDS = 1;
+    private static final int ALWAYS = 2;
+
+    private static final Filter[] NO_FILTERS = new Filter[0];
+    private static final String[][] NO_CONDITIONS = new String[0][];
+    private static final int[][] NO_DUPLICATES = new int[0][];
+
+    private volatile State state = new State(new FilterMapping[0]);
+
+    /**
+     * Constructs a compiler without filter mappings.
+     */
+    public FilterChainCompiler() { }
+
+    /**
+     * Adds a filter mapping with the given URL patterns and dispatcher
+     * types.  See {@link FilterRegistration#addMappingForUrlPatterns}.
+     *
+     * @param filter the filter that is mapped
+     * @param dispatcherTypes the dispatcher types of the filter mapping,
+     * or null if the default <tt>DispatcherType.REQUEST</tt> is to be used
+     * @param isMatchAfter true if the given filter mapping should be
+     * matched after the mappings added with false
+     * @param urlPatterns the url patterns of the filter mapping
+     *
+     * @throws IllegalArgumentException if <tt>urlPatterns</tt> is null or
+     * empty, or one of them is not a valid URL pattern
+     */
+    public void addMappingForUrlPatterns(
+            Filter filter, EnumSet<DispatcherType> dispatcherTypes,
+            boolean isMatchAfter, String... urlPatterns) {
+        if (urlPatterns == null || urlPatterns.length == 0) {
+            throw new IllegalArgumentException();
+        }
+        for (String p : urlPatterns) {
+            if (!isValidPattern(p)) {
+                String msg = lStrings.getString("err.filter.invalidUrlPattern");
+                Object[] msgArgs = new Object[1];
+                msgArgs[0] = p;
+                throw new IllegalArgumentException(MessageFormat.format(msg, msgArgs));
+            }
+        }
+        add(new FilterMapping(filter, dispatcherTypes, isMatchAfter,
+                              urlPatterns.clone(), null));
+    }
+
+    /**
+     * Adds a filter mapping with the given servlet names and dispatcher
+     * types.  See {@link FilterRegistration#addMappingForServletNames}.
+     * The servlet name <code>*</code> matches all servlets.
+     *
+     * @param filter the filter that is mapped
+     * @param dispatcherTypes the dispatcher types of the filter mapping,
+     * or null if the default <tt>DispatcherType.REQUEST</tt> is to be used
+     * @param isMatchAfter true if the given filter mapping should be
+     * matched after the mappings added with false
+     * @param servletNames the servlet names of the filter mapping
+     *
+     * @throws IllegalArgumentException if <tt>servletNames</tt> is null
+     * or empty
+     */
+    public void addMappingForServletNames(
+            Filter filter, EnumSet<DispatcherType> dispatcherTypes,
+            boolean isMatchAfter, String... servletNames) {
+        if (servletNames == null || servletNames.length == 0) {
+            throw new IllegalArgumentException();
+        }
+        add(new FilterMapping(filter, dispatcherTypes, isMatchAfter,
+                              null, servletNames.clone()));
+    }
+
+    /**
+     * Removes all the mappings of a filter.
+     *
+     * @param filter the filter whose mappings are removed
+     *
+     * @return <code>true</code> if the filter had mappings
+     */
+    public synchronized boolean removeFilter(Filter filter) {
+        FilterMapping[] mappings = state.mappings;
+        List<FilterMapping> kept = new ArrayList<>(mappings.length);
+        for (FilterMapping m : mappings) {
+            if (m.filter != filter) {
+                kept.add(m);
+            }
+        }
+        if (kept.size() == mappings.length) {
+            return false;
+        }
+        state = new State(kept.toArray(new FilterMapping[kept.size()]));
+        return true;
+    }
+
+    /**
+     * Gets the chain of a servlet mapping for a dispatcher type,
+     * compiling the chains of the mapping if the filter mappings have
+     * changed since they were last looked up.
+     *
+     * @param servletName the name of the servlet
+     * @param servlet the servlet invoked at the end of the chain
+     * @param urlPattern the URL pattern of the servlet mapping, or
+     * <code>null</code> for a dispatch by servlet name, to which no
+     * filter mapped by URL pattern applies
+     * @param dispatcherType the dispatcher type of the request
+     *
+     * @return the chain
+     */
+    public CompiledFilterChain getFilterChain(
+            String servletName, Servlet servlet, String urlPattern,
+            DispatcherType dispatcherType) {
+        if (servletName == null || servlet == null) {
+            throw new NullPointerException();
+        }
+        State s = state;
+        ServletChains sc = s.servlets.get(servletName);
+        if (sc == null || sc.servlet != servlet) {
+            sc = new ServletChains(servlet);
+            s.servlets.put(servletName, sc);
+        }
+        CompiledFilterChain[] chains =
+            (urlPattern == null) ? sc.named : sc.byPattern.get(urlPattern);
+        if (chains == null) {
+            chains = compile(s.mappings, servletName, servlet, urlPattern);
+            if (urlPattern == null) {
+                sc.named = chains;
+            } else {
+                sc.byPattern.put(urlPattern, chains);
+            }
+        }
+        return chains[dispatcherType.ordinal()];
+    }
+
+    private synchronized void add(FilterMapping mapping) {
+        FilterMapping[] mappings = state.mappings;
+        int i = mappings.length;
+        while (i > 0 && mappings[i - 1].group > mapping.group) {
+            i--;
+        }
+        FilterMapping[] m = new FilterMapping[mappings.length + 1];
+        System.arraycopy(mappings, 0, m, 0, i);
+        m[i] = mapping;
+        System.arraycopy(mappings, i, m, i + 1, mappings.length - i);
+        state = new State(m);
+    }
+
+    private static CompiledFilterChain[] compile(
+            FilterMapping[] mappings, String servletName, Servlet servlet,
+            String urlPattern) {
+        // how each mapping relates to the servlet mapping, whatever the
+        // dispatcher type
+        int[] matches = new int[mappings.length];
+        String[][] patterns = new String[mappings.length][];
+        for (int i = 0; i < mappings.length; i++) {
+            FilterMapping m = mappings[i];
+            if (m.servletNames != null) {
+                matches[i] = matchesName(m.servletNames, servletName) ? ALWAYS : NEVER;
+            } else if (urlPattern != null) {
+                List<String> depends = new ArrayList<>();
+                for (String p : m.urlPatterns) {
+                    int match = classify(p, urlPattern);
+                    if (match == DEPENDS) {
+                        depends.add(p);
+                    }
+                    matches[i] = Math.max(matches[i], match);
+                }
+                if (matches[i] == DEPENDS) {
+                    patterns[i] = depends.toArray(new String[depends.size()]);
+                }
+            }
+        }
+
+        CompiledFilterChain[] chains = new CompiledFilterChain[DISPATCHER_TYPES.length];
+        for (DispatcherType type : DISPATCHER_TYPES) {
+            int bit = 1 << type.ordinal();
+            List<Filter> filters = new ArrayList<>();
+            List<String[]> conditions = new ArrayList<>();
+            List<int[]> duplicates = new ArrayList<>();
+            boolean dependent = false;
+            next:
+            for (int i = 0; i < mappings.length; i++) {
+                if (matches[i] == NEVER || (mappings[i].dispatcherTypes & bit) == 0) {
+                    continue;
+                }
+                Filter f = mappings[i].filter;
+                int[] earlier = null;
+                for (int j = 0; j < filters.size(); j++) {
+                    if (filters.get(j) == f) {
+                        if (conditions.get(j) == null) {
+                            continue next;
+                        }
+                        earlier = (earlier == null) ? new int[1]
+                            : Arrays.copyOf(earlier, earlier.length + 1);
+                        earlier[earlier.length - 1] = j;
+                    }
+                }
+                filters.add(f);
+                conditions.add(patterns[i]);
+                duplicates.add(earlier);
+                dependent |= patterns[i] != null;
+            }
+
+            CompiledFilterChain chain = null;
+            if (!dependent) {
+                // the chains of dispatcher types with the same filters
+                // are shared
+                for (int t = 0; t < type.ordinal() && chain == null; t++) {
+                    CompiledFilterChain c = chains[t];
+                    if (!c.isPathDependent()
+                            && Arrays.asList(c.filters).equals(filters)) {
+                        chain = c;
+                    }
+                }
+            }
+            if (chain == null) {
+                chain = filters.isEmpty()
+                    ? new CompiledFilterChain(servlet, NO_FILTERS, NO_CONDITIONS,
+                                              NO_DUPLICATES)
+                    : new CompiledFilterChain(servlet,
+                        filters.toArray(new Filter[filters.size()]),
+                        conditions.toArray(new String[conditions.size()][]),
+                        duplicates.toArray(new int[duplicates.size()][]));
+            }
+            chains[type.ordinal()] = chain;
+        }
+        return chains;
+    }
+
+    private static boolean matchesName(String[] servletNames, String servletName) {
+        for (String n : servletNames) {
+            if (n.equals("*") || n.equals(servletName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Works out whether a filter URL pattern matches all, some or none
+     * of the paths a servlet URL pattern matches.
+     */
+    private static int classify(String filterPattern, String servletPattern) {
+        if (filterPattern.equals("/*")) {
+            return ALWAYS;
+        }
+        if (servletPattern.isEmpty()) {
+            // the context root
+            return matches(filterPattern, "/") ? ALWAYS : NEVER;
+        }
+        if (servletPattern.equals("/")) {
+            // the default servlet may serve any path
+            return DEPENDS;
+        }
+        if (isPrefixPattern(servletPattern)) {
+            String prefix = servletPattern.substring(0, servletPattern.length() - 2);
+            if (isPrefixPattern(filterPattern)) {
+                String filterPrefix =
+                    filterPattern.substring(0, filterPattern.length() - 2);
+                if (isUnder(prefix, filterPrefix)) {
+                    return ALWAYS;
+                }
+                return isUnder(filterPrefix, prefix) ? DEPENDS : NEVER;
+            }
+            if (isExtensionPattern(filterPattern)) {
+                return DEPENDS;
+            }
+            return isUnder(exactPath(filterPattern), prefix) ? DEPENDS : NEVER;
+        }
+        if (isExtensionPattern(servletPattern)) {
+            if (isExtensionPattern(filterPattern)) {
+                return filterPattern.equals(servletPattern) ? ALWAYS : NEVER;
+            }
+            if (isPrefixPattern(filterPattern)) {
+                return DEPENDS;
+            }
+            return matches(servletPattern, exactPath(filterPattern)) ? DEPENDS : NEVER;
+        }
+        if (servletPattern.charAt(0) == '/') {
+            return matches(filterPattern, servletPattern) ? ALWAYS : NEVER;
+        }
+        return DEPENDS;
+    }
+
+    /*
+     * Tests whether a path matches one of the given URL patterns, as
+     * filter mappings are matched.  A null path matches nothing.
+     */
+    static boolean matchesAny(String[] patterns, String path) {
+        for (int i = 0; i < patterns.length; i++) {
+            if (matches(patterns[i], path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean matches(String pattern, String path) {
+        if (path == null) {
+            return false;
+        }
+        int len = pattern.length();
+        if (isPrefixPattern(pattern)) {
+            int n = len - 2;
+            return path.regionMatches(0, pattern, 0, n)
+                && (path.length() == n || path.charAt(n) == '/');
+        }
+        if (isExtensionPattern(pattern)) {
+            int period = path.lastIndexOf('.');
+            int n = len - 2;
+            return period > path.lastIndexOf('/')
+                && path.length() - period - 1 == n
+                && path.regionMatches(period + 1, pattern, 2, n);
+        }
+        if (len == 0) {
+            return path.equals("/");
+        }
+        return pattern.equals(path);
+    }
+
+    private static boolean isPrefixPattern(String pattern) {
+        int len = pattern.length();
+        return len >= 2 && pattern.charAt(len - 1) == '*'
+            && pattern.charAt(len - 2) == '/';
+    }
+
+    private static boolean isExtensionPattern(String pattern) {
+        return pattern.startsWith("*.");
+    }
+
+    private static boolean isValidPattern(String pattern) {
+        if (pattern == null) {
+            return false;
+        }
+        if (isExtensionPattern(pattern)) {
+            return pattern.indexOf('/') < 0;
+        }
+        return pattern.isEmpty() || pattern.charAt(0) == '/';
+    }
+
+    private static String exactPath(String pattern) {
+        return pattern.isEmpty() ? "/" : pattern;
+    }
+
+    /*
+     * Tests whether a path is the given prefix or lies below it.
+     */
+    private static boolean isUnder(String path, String prefix) {
+        return path.startsWith(prefix)
+            && (path.length() == prefix.length()
+                || path.charAt(prefix.length()) == '/');
+    }
+
+
+    /*
+     * The filter mappings, and the chains compiled from them.  Changing
+     * the mappings replaces the whole state, which drops the chains.
+     */
+    private static final class State {
+
+        final FilterMapping[] mappings;
+        final ConcurrentHashMap<String, ServletChains> servlets =
+            new ConcurrentHashMap<>();
+
+        State(FilterMapping[] mappings) {
+            this.mappings = mappings;
+        }
+    }
+}
+
+
+// file private
+final class FilterMapping {
+
+    final Filter filter;
+    final int dispatcherTypes;
+    final String[] urlPatterns;
+    final String[] servletNames;
+
+    // mappings by URL pattern come first, then those by servlet name,
+    // and within each those added with isMatchAfter last
+    final int group;
+
+    FilterMapping(Filter filter, EnumSet<DispatcherType> dispatcherTypes,
+                  boolean isMatchAfter, String[] urlPatterns,
+                  String[] servletNames) {
+        if (filter == null) {
+            throw new NullPointerException();
+        }
+        this.filter = filter;
+        int types = 0;
+        if (dispatcherTypes == null) {
+            types = 1 << DispatcherType.REQUEST.ordinal();
+        } else {
+            for (DispatcherType t : dispatcherTypes) {
+                types |= 1 << t.ordinal();
+            }
+        }
+        this.dispatcherTypes = types;
+        this.urlPatterns = urlPatterns;
+        this.servletNames = servletNames;
+        this.group = (servletNames != null ? 2 : 0) + (isMatchAfter ? 1 : 0);
+    }
+}
+
+
+// file private
+final class ServletChains {
+
+    final Servlet servlet;
+    final ConcurrentHashMap<String, CompiledFilterChain[]> byPattern =
+        new ConcurrentHashMap<>();
+    volatile CompiledFilterChain[] named;
+
+    ServletChains(Servlet servlet) {
+        this.servlet = servlet;
+    }
+}
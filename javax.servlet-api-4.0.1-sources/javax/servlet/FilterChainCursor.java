@@ -0,0 +1,127 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet;
+
+import java.io.IOException;
+
+/**
+ * A {@link FilterChain} that walks a {@link CompiledFilterChain}.
+ *
+ * <p>A cursor holds the position of one request in its chain, so each
+ * request, and each dispatch nested in one, needs a cursor of its own.
+ * Cursors are meant to be reused: once a request has left its chain, the
+ * container may {@link #reset} the cursor for the next one.  Passing a
+ * request along the chain allocates nothing.</p>
+ *
+ * <pre><code>
+ *    CompiledFilterChain chain = compiler.getFilterChain(
+ *        servletName, servlet, "/api/*", DispatcherType.REQUEST);
+ *    cursor.reset(chain, servletPath + pathInfo).doFilter(req, res);
+ * </code></pre>
+ *
+ * @since Servlet 4.0
+ */
+public final class FilterChainCursor implements FilterChain {
+
+    private CompiledFilterChain chain;
+    private String path;
+    private int pos;
+
+    /**
+     * Constructs a cursor that must be {@link #reset} before it is used.
+     */
+    public FilterChainCursor() { }
+
+    /**
+     * Positions this cursor at the start of a chain.
+     *
+     * @param chain the chain to walk
+     * @param path the path of the request within the context, that is
+     * its servlet path followed by its path info, against which the
+     * filters that depend on it are matched, or <code>null</code> for a
+     * dispatch that has no path
+     *
+     * @return this cursor
+     */
+    public FilterChainCursor reset(CompiledFilterChain chain, String path) {
+        if (chain == null) {
+            throw new NullPointerException();
+        }
+        this.chain = chain;
+        this.path = path;
+        this.pos = 0;
+        return this;
+    }
+
+    /**
+     * Invokes the next filter of the chain that applies to the request,
+     * or the servlet once there are none left.  Calls made after the
+     * servlet has been invoked do nothing.
+     *
+     * @param request the request to pass along the chain
+     * @param response the response to pass along the chain
+     *
+     * @throws IOException if an I/O related error has occurred during
+     * the processing
+     * @throws ServletException if a filter or the servlet has thrown it
+     * @throws IllegalStateException if this cursor has not been reset
+     */
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response)
+            throws IOException, ServletException {
+        CompiledFilterChain c = chain;
+        if (c == null) {
+            throw new IllegalStateException();
+        }
+        int n = c.filters.length;
+        while (pos < n) {
+            int i = pos++;
+            if (c.applies(i, path)) {
+                c.filters[i].doFilter(request, response, this);
+                return;
+            }
+        }
+        if (pos == n) {
+            pos++;
+            c.servlet.service(request, response);
+        }
+    }
+}
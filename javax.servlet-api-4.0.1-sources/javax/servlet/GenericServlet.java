@@ -227,11 +227,21 @@ public abstract class GenericServlet
      * Writes the specified message to a servlet log file, prepended by the
      * servlet's name.  See {@link ServletContext#log(String)}.
      *
+     * <p>If an {@link AsyncServletLog} is bound to the context, the
+     * message is passed to it with the servlet's name, which it prepends
+     * when the message is written.
+     *
      * @param msg 	a <code>String</code> specifying
      *			the message to be written to the log file
      */     
     public void log(String msg) {
-	getServletContext().log(getServletName() + ": "+ msg);
+	ServletContext sc = getServletContext();
+	AsyncServletLog asyncLog = getAsyncLog(sc);
+	if (asyncLog != null) {
+	    asyncLog.log(getServletName(), msg, null);
+	    return;
+	}
+	sc.log(getServletName() + ": "+ msg);
     }
    
    
@@ -241,6 +251,9 @@ public abstract class GenericServlet
      * to the servlet log file, prepended by the servlet's name.
      * See {@link ServletContext#log(String, Throwable)}.
      *
+     * <p>If an {@link AsyncServletLog} is bound to the context, the
+     * message is passed to it with the servlet's name, as
+     * {@link #log(String)} does.
      *
      * @param message 		a <code>String</code> that describes
      *				the error or exception
@@ -249,7 +262,19 @@ public abstract class GenericServlet
      * 				or exception
      */   
     public void log(String message, Throwable t) {
-	getServletContext().log(getServletName() + ": " + message, t);
+	ServletContext sc = getServletContext();
+	AsyncServletLog asyncLog = getAsyncLog(sc);
+	if (asyncLog != null) {
+	    asyncLog.log(getServletName(), message, t);
+	    return;
+	}
+	sc.log(getServletName() + ": " + message, t);
+    }
+
+
+    private static AsyncServletLog getAsyncLog(ServletContext sc) {
+	Object log = sc.getAttribute(AsyncServletLog.CONTEXT_ATTRIBUTE);
+	return (log instanceof AsyncServletLog) ? (AsyncServletLog) log : null;
     }
     
     
@@ -0,0 +1,446 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Resolves the MIME type of a file from its extension, as
+ * {@link ServletContext#getMimeType} does, without allocating.</p>
+ *
+ * <p>The extension is found by scanning the file name backwards from
+ * its end, and is looked up, ignoring case, in a table built with a
+ * perfect hash function: the extension is hashed in place once to
+ * select a bucket, and once more with the seed of that bucket to select
+ * its slot, so that each lookup compares it with at most one key.  The
+ * types returned are interned constants.  For each type, the value of
+ * the <code>Content-Type</code> header is precomputed, with a charset
+ * for textual types, both as a <code>String</code> and as bytes.</p>
+ *
+ * <pre><code>
+ *    MimeTypes mimeTypes = new MimeTypes(mimeMappingsOfWebXml,
+ *                                        StandardCharsets.UTF_8);
+ *    String type = mimeTypes.getMimeType("/css/site.css");   // "text/css"
+ * </code></pre>
+ *
+ * <p>This class is immutable and safe for use by multiple threads.</p>
+ *
+ * @since Servlet 4.0
+ */
+public final class MimeTypes {
+
+    private static final String[] BUILT_IN = {
+        "aac", "audio/aac",
+        "avi", "video/x-msvideo",
+        "avif", "image/avif",
+        "bin", "application/octet-stream",
+        "bmp", "image/bmp",
+        "bz2", "application/x-bzip2",
+        "css", "text/css",
+        "csv", "text/csv",
+        "doc", "application/msword",
+        "docx", "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+        "eot", "application/vnd.ms-fontobject",
+        "epub", "application/epub+zip",
+        "gif", "image/gif",
+        "gz", "application/gzip",
+        "htm", "text/html",
+        "html", "text/html",
+        "ico", "image/vnd.microsoft.icon",
+        "ics", "text/calendar",
+        "jar", "application/java-archive",
+        "jpeg", "image/jpeg",
+        "jpg", "image/jpeg",
+        "js", "application/javascript",
+        "json", "application/json",
+        "jsonld", "application/ld+json",
+        "jsp", "text/html",
+        "m4a", "audio/mp4",
+        "map", "application/json",
+        "md", "text/markdown",
+        "mid", "audio/midi",
+        "midi", "audio/midi",
+        "mjs", "application/javascript",
+        "mp3", "audio/mpeg",
+        "mp4", "video/mp4",
+        "mpeg", "video/mpeg",
+        "odp", "application/vnd.oasis.opendocument.presentation",
+        "ods", "application/vnd.oasis.opendocument.spreadsheet",
+        "odt", "application/vnd.oasis.opendocument.text",
+        "oga", "audio/ogg",
+        "ogg", "audio/ogg",
+        "ogv", "video/ogg",
+        "otf", "font/otf",
+        "pdf", "application/pdf",
+        "png", "image/png",
+        "ppt", "application/vnd.ms-powerpoint",
+        "pptx", "application/vnd.openxmlformats-officedocument.presentationml.presentation",
+        "rar", "application/vnd.rar",
+        "rss", "application/rss+xml",
+        "rtf", "application/rtf",
+        "sh", "application/x-sh",
+        "svg", "image/svg+xml",
+        "tar", "application/x-tar",
+        "tif", "image/tiff",
+        "tiff", "image/tiff",
+        "ttf", "font/ttf",
+        "txt", "text/plain",
+        "wasm", "application/wasm",
+        "wav", "audio/wav",
+        "weba", "audio/webm",
+        "webm", "video/webm",
+        "webmanifest", "application/manifest+json",
+        "webp", "image/webp",
+        "woff", "font/woff",
+        "woff2", "font/woff2",
+        "xhtml", "application/xhtml+xml",
+        "xls", "application/vnd.ms-excel",
+        "xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+        "xml", "application/xml",
+        "xsd", "application/xml",
+        "xsl", "application/xml",
+        "xslt", "application/xslt+xml",
+        "yaml", "application/yaml",
+        "yml", "application/yaml",
+        "zip", "application/zip",
+        "7z", "application/x-7z-compressed",
+    };
+
+    // the most seeds tried for a bucket, and the most times the table
+    // is doubled, before giving up
+    private static final int MAX_SEEDS = 1 << 16;
+    private static final int MAX_DOUBLINGS = 4;
+
+    private static final MimeTypes DEFAULT = new MimeTypes(null, StandardCharsets.UTF_8);
+
+    // the table, indexed by the perfect hash of the extensions
+    private final String[] keys;
+    private final String[] types;
+    private final String[] contentTypes;
+    private final byte[][] contentTypeBytes;
+    // the seed of the second hash of the extensions of each bucket
+    private final int[] seeds;
+    private final int shift;
+
+    /**
+     * Gets the resolver of the built-in types, whose textual types have
+     * the UTF-8 charset.
+     *
+     * @return the resolver
+     */
+    public static MimeTypes getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Constructs a resolver of the built-in types and the given ones.
+     *
+     * @param mimeMappings types by extension, such as those of the
+     * <code>mime-mapping</code> elements of the deployment descriptor,
+     * which take precedence over the built-in types, or
+     * <code>null</code>
+     * @param charset the charset of the <code>Content-Type</code> of
+     * textual types
+     *
+     * @throws IllegalArgumentException if an extension is empty, or if
+     * no perfect hash function is found for the extensions
+     */
+    public MimeTypes(Map<String, String> mimeMappings, Charset charset) {
+        Map<String, String> all = new LinkedHashMap<>();
+        for (int i = 0; i < BUILT_IN.length; i += 2) {
+            all.put(BUILT_IN[i], BUILT_IN[i + 1]);
+        }
+        if (mimeMappings != null) {
+            for (Map.Entry<String, String> e : mimeMappings.entrySet()) {
+                String ext = e.getKey();
+                if (ext.startsWith(".")) {
+                    ext = ext.substring(1);
+                }
+                if (ext.isEmpty()) {
+                    throw new IllegalArgumentException();
+                }
+                all.put(toLowerCase(ext), e.getValue());
+            }
+        }
+
+        String[] exts = all.keySet().toArray(new String[all.size()]);
+        seeds = new int[1 << ceilLog2((exts.length + 1) / 2)];
+        int[] buckets = new int[exts.length];
+        for (int i = 0; i < exts.length; i++) {
+            buckets[i] = hash(exts[i], 0, exts[i].length(), 0)
+                & (seeds.length - 1);
+        }
+        int bits = ceilLog2(exts.length * 2);
+        int maxBits = bits + MAX_DOUBLINGS;
+        while (!findSeeds(exts, buckets, seeds, bits)) {
+            if (++bits > maxBits) {
+                throw new IllegalArgumentException();
+            }
+        }
+        shift = 32 - bits;
+
+        keys = new String[1 << bits];
+        types = new String[1 << bits];
+        contentTypes = new String[1 << bits];
+        contentTypeBytes = new byte[1 << bits][];
+        for (int i = 0; i < exts.length; i++) {
+            int slot = hash(exts[i], 0, exts[i].length(), seeds[buckets[i]])
+                >>> shift;
+            String type = all.get(exts[i]).intern();
+            String contentType = (isTextual(type) && type.indexOf(';') < 0)
+                ? (type + ";charset=" + charset.name()).intern() : type;
+            keys[slot] = exts[i];
+            types[slot] = type;
+            contentTypes[slot] = contentType;
+            contentTypeBytes[slot] =
+                contentType.getBytes(StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * Returns the MIME type of a file.
+     *
+     * @param file the name of the file, possibly with a path
+     *
+     * @return the MIME type, or <code>null</code> if the file has no
+     * extension or its extension is unknown
+     */
+    public String getMimeType(String file) {
+        int slot = lookup(file);
+        return (slot < 0) ? null : types[slot];
+    }
+
+    /**
+     * Returns the value of the <code>Content-Type</code> header of a
+     * file, that is its MIME type with, for textual types, a charset.
+     *
+     * @param file the name of the file, possibly with a path
+     *
+     * @return the content type, or <code>null</code> if the file has no
+     * extension or its extension is unknown
+     */
+    public String getContentType(String file) {
+        int slot = lookup(file);
+        return (slot < 0) ? null : contentTypes[slot];
+    }
+
+    /**
+     * Copies the ISO-8859-1 bytes of the <code>Content-Type</code> header
+     * value of a file, as returned by {@link #getContentType}, into an
+     * array.
+     *
+     * @param file the name of the file, possibly with a path
+     * @param dst the array the bytes are copied to
+     * @param off the offset in <code>dst</code> of the first byte
+     *
+     * @return the number of bytes copied, or -1 if the file has no
+     * extension or its extension is unknown
+     *
+     * @throws IndexOutOfBoundsException if the bytes do not fit in
+     * <code>dst</code> from <code>off</code>
+     */
+    public int copyContentType(String file, byte[] dst, int off) {
+        int slot = lookup(file);
+        if (slot < 0) {
+            return -1;
+        }
+        byte[] b = contentTypeBytes[slot];
+        System.arraycopy(b, 0, dst, off, b.length);
+        return b.length;
+    }
+
+    /*
+     * Returns the slot of the extension of a file, or -1.
+     */
+    private int lookup(String file) {
+        int end = file.length();
+        int start = end;
+        while (start > 0) {
+            char c = file.charAt(start - 1);
+            if (c == '.') {
+                break;
+            }
+            if (c == '/' || c == '\\') {
+                return -1;
+            }
+            start--;
+        }
+        if (start == 0 || start == end) {
+            return -1;
+        }
+        int seed = seeds[hash(file, start, end, 0) & (seeds.length - 1)];
+        int slot = hash(file, start, end, seed) >>> shift;
+        String key = keys[slot];
+        if (key == null || key.length() != end - start) {
+            return -1;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != toLowerCase(file.charAt(start + i))) {
+                return -1;
+            }
+        }
+        return slot;
+    }
+
+    /*
+     * Finds, for each bucket of extensions, a seed of the second hash that
+     * maps its extensions to free slots of a table of 2^bits slots,
+     * placing the largest buckets first, or returns false if there is a
+     * bucket for which none is found.  The seeds tried are always the
+     * same, so the table of a set of extensions is too.
+     */
+    private static boolean findSeeds(String[] exts, int[] buckets,
+                                     int[] seeds, int bits) {
+        int shift = 32 - bits;
+        int[][] members = new int[seeds.length][];
+        int[] sizes = new int[seeds.length];
+        for (int b : buckets) {
+            sizes[b]++;
+        }
+        for (int b = 0; b < seeds.length; b++) {
+            members[b] = new int[sizes[b]];
+            sizes[b] = 0;
+        }
+        for (int i = 0; i < exts.length; i++) {
+            members[buckets[i]][sizes[buckets[i]]++] = i;
+        }
+        Integer[] order = new Integer[seeds.length];
+        for (int b = 0; b < order.length; b++) {
+            order[b] = b;
+        }
+        Arrays.sort(order,
+            Comparator.comparingInt((Integer b) -> -members[b].length));
+
+        boolean[] used = new boolean[1 << bits];
+        int[] slots = new int[exts.length];
+        for (int b : order) {
+            int[] bucket = members[b];
+            if (bucket.length == 0) {
+                seeds[b] = 0;
+                continue;
+            }
+            int seed = 1;
+            for (;; seed++) {
+                if (seed > MAX_SEEDS) {
+                    return false;
+                }
+                if (fits(exts, bucket, seed, shift, used, slots)) {
+                    break;
+                }
+            }
+            for (int k = 0; k < bucket.length; k++) {
+                used[slots[k]] = true;
+            }
+            seeds[b] = seed;
+        }
+        return true;
+    }
+
+    /*
+     * Returns whether the extensions of a bucket hash with a seed to
+     * distinct free slots, which are stored into slots.
+     */
+    private static boolean fits(String[] exts, int[] bucket, int seed,
+                                int shift, boolean[] used, int[] slots) {
+        for (int k = 0; k < bucket.length; k++) {
+            String ext = exts[bucket[k]];
+            int slot = hash(ext, 0, ext.length(), seed) >>> shift;
+            if (used[slot]) {
+                return false;
+            }
+            for (int j = 0; j < k; j++) {
+                if (slots[j] == slot) {
+                    return false;
+                }
+            }
+            slots[k] = slot;
+        }
+        return true;
+    }
+
+    /*
+     * A seeded hash of the lower-cased characters of s from start to end,
+     * mixing each character so that different seeds separate
+     * extensions that have the same hash with another one.
+     */
+    private static int hash(String s, int start, int end, int seed) {
+        int h = seed;
+        for (int i = start; i < end; i++) {
+            int k = toLowerCase(s.charAt(i)) * 0xcc9e2d51;
+            k = Integer.rotateLeft(k, 15) * 0x1b873593;
+            h = Integer.rotateLeft(h ^ k, 13) * 5 + 0xe6546b64;
+        }
+        h ^= end - start;
+        h = (h ^ (h >>> 16)) * 0x85ebca6b;
+        h = (h ^ (h >>> 13)) * 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    private static int ceilLog2(int n) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(1, n) - 1);
+    }
+
+    private static char toLowerCase(char c) {
+        return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static String toLowerCase(String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static boolean isTextual(String type) {
+        return type.startsWith("text/")
+            || type.equals("application/javascript")
+            || type.equals("application/json")
+            || type.equals("application/xml")
+            || type.endsWith("+xml")
+            || type.endsWith("+json");
+    }
+}
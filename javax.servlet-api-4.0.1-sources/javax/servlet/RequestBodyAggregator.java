@@ -0,0 +1,241 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>Reads the whole body of a request without blocking the calling
+ * thread.  The body is drained by a {@link ReadListener} as the
+ * container reports data to be available, so no request thread waits
+ * for a slow client.</p>
+ *
+ * <pre><code>
+ *    AsyncContext ac = request.startAsync();
+ *    RequestBodyAggregator.aggregate(request, 1024 * 1024)
+ *        .whenComplete((body, t) -&gt; { ...; ac.complete(); });
+ * </code></pre>
+ *
+ * <p>The body is collected into fixed-size chunks taken from a pool
+ * shared by all aggregators, which are copied into one buffer once the body is complete and then
+ * returned to the pool, so that memory is only taken as data arrives,
+ * whatever content length the request declares.</p>
+ *
+ * @see ServletInputStream#setReadListener
+ *
+ * @since Servlet 4.0
+ */
+public class RequestBodyAggregator implements ReadListener {
+
+    private static final String LSTRING_FILE = "javax.servlet.LocalStrings";
+    private static final ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+
+    private final ServletInputStream in;
+    private final long maxSize;
+    private final long contentLength;
+    private final CompletableFuture<ByteBuffer> future =
+        new CompletableFuture<>();
+
+    private final List<byte[]> chunks = new ArrayList<>();
+    private byte[] chunk;
+    private int chunkPos;
+
+    private long size;
+
+    private RequestBodyAggregator(ServletInputStream in, long maxSize,
+                                  long contentLength) {
+        this.in = in;
+        this.maxSize = maxSize;
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * Starts reading the body of a request in non-blocking mode.
+     *
+     * <p>Asynchronous processing must have been started for the request,
+     * and its input stream must not have been read from.  A request
+     * whose declared content length exceeds <code>maxSize</code> is
+     * rejected before anything is read; otherwise reading stops as soon
+     * as more than <code>maxSize</code> bytes have been received.  In
+     * both cases, and when the body is longer or shorter than its
+     * declared content length, the returned future fails with an
+     * <code>IOException</code>.
+     *
+     * @param request the request whose body is read
+     * @param maxSize the largest body accepted, in bytes, which may not
+     * exceed <code>Integer.MAX_VALUE</code>
+     *
+     * @return a future completed with a heap buffer holding the whole
+     * body, positioned at zero, once it has been read
+     *
+     * @throws IOException if the input stream of the request cannot be
+     * obtained
+     *
+     * @throws IllegalArgumentException if <code>maxSize</code> is
+     * negative or greater than <code>Integer.MAX_VALUE</code>
+     *
+     * @throws IllegalStateException if asynchronous processing has not
+     * been started for the request, or a <code>ReadListener</code>
+     * has already been set
+     */
+    public static CompletableFuture<ByteBuffer> aggregate(
+            ServletRequest request, long maxSize) throws IOException {
+        if (maxSize < 0 || maxSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException();
+        }
+
+        long contentLength = request.getContentLengthLong();
+        if (contentLength > maxSize) {
+            CompletableFuture<ByteBuffer> failed = new CompletableFuture<>();
+            failed.completeExceptionally(tooLarge(maxSize));
+            return failed;
+        }
+
+        ServletInputStream in = request.getInputStream();
+        RequestBodyAggregator aggregator =
+            new RequestBodyAggregator(in, maxSize, contentLength);
+        in.setReadListener(aggregator);
+        return aggregator.future;
+    }
+
+    /**
+     * Reads all the data that is available without blocking.
+     *
+     * @throws IOException if an I/O related error has occurred
+     */
+    @Override
+    public void onDataAvailable() throws IOException {
+        if (future.isDone()) {
+            return;
+        }
+
+        while (in.isReady()) {
+            if (chunk == null || chunkPos == chunk.length) {
+                chunk = ChunkPool.take();
+                chunks.add(chunk);
+                chunkPos = 0;
+            }
+            int n = in.read(chunk, chunkPos, chunk.length - chunkPos);
+            if (n == -1) {
+                return;
+            }
+            chunkPos += n;
+            size += n;
+            if (size > maxSize) {
+                fail(tooLarge(maxSize));
+                return;
+            }
+            if (contentLength >= 0 && size > contentLength) {
+                fail(tooLarge(contentLength));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Completes the future with the body that has been read.
+     *
+     * @throws IOException if an I/O related error has occurred
+     */
+    @Override
+    public void onAllDataRead() throws IOException {
+        if (future.isDone()) {
+            return;
+        }
+
+        if (size < contentLength) {
+            fail(truncated(size, contentLength));
+            return;
+        }
+
+        byte[] b = new byte[(int) size];
+        int off = 0;
+        for (byte[] c : chunks) {
+            int len = Math.min(c.length, b.length - off);
+            System.arraycopy(c, 0, b, off, len);
+            off += len;
+        }
+        releaseChunks();
+        future.complete(ByteBuffer.wrap(b));
+    }
+
+    /**
+     * Fails the future with the error reported by the container.
+     *
+     * @param t the throwable to indicate why the read operation failed
+     */
+    @Override
+    public void onError(Throwable t) {
+        fail(t);
+    }
+
+    private void fail(Throwable t) {
+        releaseChunks();
+        future.completeExceptionally(t);
+    }
+
+    private void releaseChunks() {
+        ChunkPool.release(chunks);
+        chunk = null;
+    }
+
+    private static IOException tooLarge(long maxSize) {
+        String msg = lStrings.getString("err.io.bodyTooLarge");
+        Object[] msgArgs = new Object[1];
+        msgArgs[0] = Long.valueOf(maxSize);
+        return new IOException(MessageFormat.format(msg, msgArgs));
+    }
+
+    private static IOException truncated(long size, long contentLength) {
+        String msg = lStrings.getString("err.io.bodyTruncated");
+        Object[] msgArgs = new Object[2];
+        msgArgs[0] = Long.valueOf(size);
+        msgArgs[1] = Long.valueOf(contentLength);
+        return new IOException(MessageFormat.format(msg, msgArgs));
+    }
+}
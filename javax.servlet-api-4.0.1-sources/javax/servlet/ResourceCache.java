@@ -0,0 +1,488 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Caches the content of the resources of a {@link ServletContext}, so
+ * that templates, configuration files and static assets that are read
+ * again and again are not opened and read from the web application
+ * archive or the file system each time.</p>
+ *
+ * <pre><code>
+ *    ResourceCache cache = new ResourceCache(getServletContext());
+ *    ...
+ *    ByteBuffer content = cache.getResourceBuffer(path);
+ *    if (content != null) {
+ *        response.getOutputStream().write(content);
+ *    }
+ * </code></pre>
+ *
+ * <p>The content of resources is copied into heap arrays, since files
+ * may be rewritten or truncated in place while they are cached.
+ * Resources larger than the maximum entry size are not cached and are
+ * read from the context as before, and those that cannot be read are
+ * left to the context too.  The streams and buffers handed out are
+ * read-only views of the cached content, which is not copied again.</p>
+ *
+ * <p>Every so often, as set by the check interval, the modification
+ * time and size of a resource are compared with those of the cached
+ * content when it is looked up, and a resource that has changed is
+ * read again.  That a resource does not exist, or is too large to be
+ * cached, is remembered as well until the next check, so that such
+ * resources are not looked up or read again on every call.  Once the
+ * cached content exceeds the maximum size, the least recently used
+ * entries are evicted, entries that have been used more than once
+ * since the last eviction being given a second chance.</p>
+ *
+ * <p>This class is safe for use by multiple threads.</p>
+ *
+ * @see ServletContext#getResourceAsStream
+ *
+ * @since Servlet 4.0
+ */
+public final class ResourceCache {
+
+    /** The default maximum size of the cached content, 32 MiB. */
+    public static final long DEFAULT_MAX_SIZE = 32 * 1024 * 1024;
+
+    /** The default check interval, 5 seconds. */
+    public static final long DEFAULT_CHECK_INTERVAL = 5000;
+
+    private final ServletContext context;
+    private final long maxSize;
+    private final long maxEntrySize;
+    private final long checkIntervalNanos;
+
+    private final ConcurrentHashMap<String, CachedResource> entries =
+        new ConcurrentHashMap<>();
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * Constructs a cache of the resources of a context, with the
+     * default limits.
+     *
+     * @param context the context whose resources are cached
+     */
+    public ResourceCache(ServletContext context) {
+        this(context, DEFAULT_MAX_SIZE, DEFAULT_CHECK_INTERVAL);
+    }
+
+    /**
+     * Constructs a cache of the resources of a context.
+     *
+     * @param context the context whose resources are cached
+     * @param maxSize the maximum total size of the cached content, in
+     * bytes; no entry may take more than an eighth of it
+     * @param checkInterval the minimum time, in milliseconds, between
+     * two checks of whether a resource has changed, 0 to check on every
+     * lookup, or a negative value never to check
+     *
+     * @throws IllegalArgumentException if <code>maxSize</code> is
+     * negative
+     */
+    public ResourceCache(ServletContext context, long maxSize,
+                         long checkInterval) {
+        if (context == null) {
+            throw new NullPointerException();
+        }
+        if (maxSize < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.context = context;
+        this.maxSize = maxSize;
+        this.maxEntrySize = Math.min(maxSize / 8, Integer.MAX_VALUE);
+        this.checkIntervalNanos = (checkInterval < 0) ? -1
+            : TimeUnit.MILLISECONDS.toNanos(checkInterval);
+    }
+
+    /**
+     * Returns the URL of a resource, as
+     * {@link ServletContext#getResource} does, from the cache if the
+     * resource is cached.
+     *
+     * @param path a <code>String</code> specifying the path to the
+     * resource
+     *
+     * @return the resource located at the named path, or
+     * <code>null</code> if there is no resource at that path
+     *
+     * @throws MalformedURLException if the pathname is not given in
+     * the correct form
+     */
+    public URL getResource(String path) throws MalformedURLException {
+        CachedResource e = lookup(path);
+        return (e != null) ? e.url : context.getResource(path);
+    }
+
+    /**
+     * Returns a stream over the content of a resource, as
+     * {@link ServletContext#getResourceAsStream} does.  The stream reads
+     * from the cached content when the resource is cached.
+     *
+     * @param path a <code>String</code> specifying the path to the
+     * resource
+     *
+     * @return the <code>InputStream</code> returned to the servlet, or
+     * <code>null</code> if no resource exists at the specified path
+     */
+    public InputStream getResourceAsStream(String path) {
+        CachedResource e = lookup(path);
+        if (e == null || (e.content == null && e.url != null)) {
+            return context.getResourceAsStream(path);
+        }
+        return (e.content != null)
+            ? new BufferInputStream(e.content.duplicate()) : null;
+    }
+
+    /**
+     * Returns the content of a resource as a read-only buffer that
+     * shares the cached content, for example to be written with
+     * {@link ServletOutputStream#write(ByteBuffer)}.
+     *
+     * @param path a <code>String</code> specifying the path to the
+     * resource
+     *
+     * @return a new read-only buffer positioned at the start of the
+     * content, or <code>null</code> if no resource exists at the
+     * specified path or the resource is too large to be cached
+     */
+    public ByteBuffer getResourceBuffer(String path) {
+        CachedResource e = lookup(path);
+        return (e != null && e.content != null)
+            ? e.content.duplicate() : null;
+    }
+
+    /**
+     * Removes a resource from the cache, so that it is read again when
+     * it is next looked up.
+     *
+     * @param path the path of the resource
+     */
+    public void invalidate(String path) {
+        CachedResource e = entries.remove(path);
+        if (e != null) {
+            size.addAndGet(-e.length);
+        }
+    }
+
+    /**
+     * Removes all resources from the cache.
+     */
+    public void clear() {
+        for (String path : entries.keySet()) {
+            invalidate(path);
+        }
+    }
+
+    /**
+     * Gets the total size of the cached content.
+     *
+     * @return the size, in bytes
+     */
+    public long getSize() {
+        return size.get();
+    }
+
+    private CachedResource lookup(String path) {
+        CachedResource e = entries.get(path);
+        long now = System.nanoTime();
+        if (e != null) {
+            if (checkIntervalNanos < 0 || now - e.checkedAt < checkIntervalNanos) {
+                e.used(now);
+                return e;
+            }
+            e.checkedAt = now;
+            if (e.content != null && !e.isModified()) {
+                e.used(now);
+                return e;
+            }
+            if (entries.remove(path, e)) {
+                size.addAndGet(-e.length);
+            }
+        }
+
+        e = load(path, now);
+        if (e == null) {
+            return null;
+        }
+        CachedResource other = entries.putIfAbsent(path, e);
+        if (other != null) {
+            // loaded by another thread in the meantime
+            return other;
+        }
+        if (size.addAndGet(e.length) > maxSize) {
+            evict();
+        }
+        return e;
+    }
+
+    /*
+     * Reads a resource.  A resource that does not exist, or is too large,
+     * gets an entry without content; null is returned if the resource
+     * cannot be read.
+     */
+    private CachedResource load(String path, long now) {
+        try {
+            URL url = context.getResource(path);
+            if (url == null) {
+                return new CachedResource(path, null, null, null, -1, now);
+            }
+            Path file = toFile(url);
+            byte[] b;
+            long lastModified;
+            if (file != null) {
+                lastModified = Files.getLastModifiedTime(file).toMillis();
+                if (Files.size(file) > maxEntrySize) {
+                    return new CachedResource(path, url, file, null, -1, now);
+                }
+                b = Files.readAllBytes(file);
+            } else {
+                URLConnection conn = url.openConnection();
+                lastModified = conn.getLastModified();
+                if (conn.getContentLengthLong() > maxEntrySize) {
+                    return new CachedResource(path, url, null, null, -1, now);
+                }
+                try (InputStream in = conn.getInputStream()) {
+                    b = readAll(in, maxEntrySize);
+                }
+            }
+            ByteBuffer content = (b != null)
+                ? ByteBuffer.wrap(b).asReadOnlyBuffer() : null;
+            return new CachedResource(path, url, file, content,
+                                      lastModified, now);
+        } catch (IOException | RuntimeException e) {
+            // not cached, the context is asked directly
+            return null;
+        }
+    }
+
+    /*
+     * Evicts entries until the cached content takes no more than seven
+     * eighths of the maximum size.
+     */
+    private synchronized void evict() {
+        long target = maxSize - maxSize / 8;
+        if (size.get() <= maxSize) {
+            return;
+        }
+        List<CachedResource> candidates = new ArrayList<>(entries.values());
+        candidates.sort((a, b) -> Long.compare(a.lastUsed, b.lastUsed));
+        for (int pass = 0; pass < 2 && size.get() > target; pass++) {
+            for (CachedResource e : candidates) {
+                if (size.get() <= target) {
+                    break;
+                }
+                if (pass == 0 && e.hits > 1) {
+                    // used repeatedly: a second chance
+                    e.hits = 0;
+                    continue;
+                }
+                if (entries.remove(e.path, e)) {
+                    size.addAndGet(-e.length);
+                }
+            }
+        }
+    }
+
+    private static Path toFile(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return Paths.get(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException
+                 | FileSystemNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static byte[] readAll(InputStream in, long max) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            if (out.size() + (long) n > max) {
+                return null;
+            }
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
+
+
+/*
+ * The cached content of a resource, or, without content, the fact that
+ * the resource does not exist (url is null) or is too large to be
+ * cached.
+ */
+// file private
+final class CachedResource {
+
+    // the size charged for an entry without content, besides its path
+    private static final int NO_CONTENT_SIZE = 128;
+
+    final String path;
+    final URL url;
+    final Path file;
+    final ByteBuffer content;
+    // the size of the content, or the size charged for the entry
+    final int length;
+    final long lastModified;
+
+    volatile long checkedAt;
+    volatile long lastUsed;
+
+    // racy, only used to tell entries used repeatedly from the others
+    int hits;
+
+    CachedResource(String path, URL url, Path file, ByteBuffer content,
+                   long lastModified, long now) {
+        this.path = path;
+        this.url = url;
+        this.file = file;
+        this.content = content;
+        this.length = (content != null) ? content.remaining()
+            : NO_CONTENT_SIZE + 2 * path.length();
+        this.lastModified = lastModified;
+        this.checkedAt = now;
+        this.lastUsed = now;
+    }
+
+    void used(long now) {
+        lastUsed = now;
+        hits++;
+    }
+
+    /*
+     * Tests whether the resource has changed, or can no longer be read,
+     * since it was cached.
+     */
+    boolean isModified() {
+        try {
+            if (file != null) {
+                return Files.getLastModifiedTime(file).toMillis() != lastModified
+                    || Files.size(file) != length;
+            }
+            return url.openConnection().getLastModified() != lastModified;
+        } catch (IOException | RuntimeException e) {
+            return true;
+        }
+    }
+}
+
+
+// file private
+final class BufferInputStream extends InputStream {
+
+    private final ByteBuffer buf;
+    private int mark;
+
+    BufferInputStream(ByteBuffer buf) {
+        this.buf = buf;
+    }
+
+    @Override
+    public int read() {
+        return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (!buf.hasRemaining()) {
+            return -1;
+        }
+        int n = Math.min(len, buf.remaining());
+        buf.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        int k = (int) Math.max(0, Math.min(n, buf.remaining()));
+        buf.position(buf.position() + k);
+        return k;
+    }
+
+    @Override
+    public int available() {
+        return buf.remaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        mark = buf.position();
+    }
+
+    @Override
+    public synchronized void reset() {
+        buf.position(mark);
+    }
+}
@@ -0,0 +1,742 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * <p>An in-memory index of the resources of a web application, which
+ * answers {@link ServletContext#getResourcePaths},
+ * {@link ServletContext#getResource} and
+ * {@link ServletContext#getRealPath} by walking one node per segment of
+ * the path, without touching the file system.</p>
+ *
+ * <p>The resources of a web application are those of its document root
+ * and those under the <tt>/META-INF/resources</tt> directory of the JAR
+ * files in its <tt>/WEB-INF/lib</tt> directory, the document root
+ * taking precedence, then the JAR files in the order given.  The index
+ * is built by listing all of them in parallel, once, at deploy time.
+ * Symbolic links in the document root are followed, except those that
+ * lead back to a directory above them.</p>
+ *
+ * <pre><code>
+ *    ResourceIndex index = ResourceIndex.build(docBase, jars);
+ *    index.watch();    // exploded web applications only
+ *    ...
+ *    index.close();
+ * </code></pre>
+ *
+ * <p>For an exploded web application, {@link #watch} keeps the index up
+ * to date as files are added to and removed from the document root.
+ * Changes are applied by a background thread, so they show up shortly
+ * after they are made.  If the file system reports that changes were
+ * lost, the document root is listed again into a new index, which
+ * replaces the current one once it is complete.</p>
+ *
+ * <p>This class is safe for use by multiple threads.</p>
+ *
+ * @since Servlet 4.0
+ */
+public final class ResourceIndex implements Closeable {
+
+    private static final String JAR_RESOURCES = "META-INF/resources/";
+
+    private static final EnumSet<FileVisitOption> FOLLOW_LINKS =
+        EnumSet.of(FileVisitOption.FOLLOW_LINKS);
+
+    private final ResourceRoot documentRoot;
+    // replaced as a whole when the document root is listed again
+    private volatile ResourceNode root = new ResourceNode();
+
+    private WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    // whether changes were lost since the document root was last listed
+    private boolean stale;
+
+    private ResourceIndex(ResourceRoot documentRoot) {
+        this.documentRoot = documentRoot;
+    }
+
+    /**
+     * Builds the index of a web application, listing its document root
+     * and JAR files in parallel in the common fork/join pool.
+     *
+     * @param documentRoot the document root, or <code>null</code> if the
+     * web application is not exploded
+     * @param jars the JAR files of the <tt>/WEB-INF/lib</tt> directory,
+     * whose <tt>/META-INF/resources</tt> entries are indexed
+     *
+     * @return the index
+     *
+     * @throws IOException if the document root or a JAR file cannot be
+     * read
+     */
+    public static ResourceIndex build(Path documentRoot, List<Path> jars)
+            throws IOException {
+        return build(documentRoot, jars, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Builds the index of a web application, listing its document root
+     * and JAR files in parallel with the given executor.
+     *
+     * @param documentRoot the document root, or <code>null</code> if the
+     * web application is not exploded
+     * @param jars the JAR files of the <tt>/WEB-INF/lib</tt> directory,
+     * whose <tt>/META-INF/resources</tt> entries are indexed
+     * @param executor the executor that lists the document root and
+     * each JAR file
+     *
+     * @return the index
+     *
+     * @throws IOException if the document root or a JAR file cannot be
+     * read
+     */
+    public static ResourceIndex build(Path documentRoot, List<Path> jars,
+                                      Executor executor) throws IOException {
+        List<ResourceRoot> roots = new ArrayList<>();
+        if (documentRoot != null) {
+            roots.add(new ResourceRoot(0, documentRoot.toAbsolutePath(), null));
+        }
+        for (Path jar : jars) {
+            roots.add(new ResourceRoot(roots.size(), null, jar.toAbsolutePath()));
+        }
+
+        List<CompletableFuture<List<String>>> listings = new ArrayList<>();
+        for (ResourceRoot r : roots) {
+            listings.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return (r.directory != null) ? listDirectory(r.directory)
+                        : listJar(r.jar);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+
+        ResourceIndex index = new ResourceIndex(
+            (documentRoot != null) ? roots.get(0) : null);
+        for (int i = 0; i < roots.size(); i++) {
+            List<String> paths;
+            try {
+                paths = listings.get(i).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw e;
+            }
+            for (String p : paths) {
+                index.add(roots.get(i), p);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Lists the resources directly below a path, as
+     * {@link ServletContext#getResourcePaths} does.
+     *
+     * @param path the path of a directory, which must start with a
+     * <tt>/</tt>
+     *
+     * @return a new Set of the paths of the resources in the directory,
+     * those of subdirectories ending with a <tt>/</tt>, or null if there
+     * are no resources whose path begins with the supplied path
+     */
+    public Set<String> getResourcePaths(String path) {
+        ResourceNode node = find(path);
+        if (node == null || !node.isDirectory()) {
+            return null;
+        }
+        String prefix = path.endsWith("/") ? path : path + "/";
+        Set<String> result = new LinkedHashSet<>();
+        for (Map.Entry<String, ResourceNode> e : node.children.entrySet()) {
+            ResourceNode child = e.getValue();
+            if (child.exists()) {
+                result.add(child.isDirectory() ? prefix + e.getKey() + "/"
+                           : prefix + e.getKey());
+            }
+        }
+        return result.isEmpty() ? null : result;
+    }
+
+    /**
+     * Tests whether there is a resource, file or directory, at a path.
+     *
+     * @param path the path of the resource, which must start with a
+     * <tt>/</tt>
+     *
+     * @return <code>true</code> if the resource exists
+     */
+    public boolean exists(String path) {
+        return find(path) != null;
+    }
+
+    /**
+     * Finds the first welcome file of a directory that exists.
+     *
+     * @param directory the path of the directory, which must start with
+     * a <tt>/</tt>
+     * @param welcomeFiles the names of the welcome files, in order of
+     * preference, such as <tt>index.html</tt>
+     *
+     * @return the path of the welcome file, or <code>null</code> if none
+     * of them is a file in the directory
+     */
+    public String getWelcomeFile(String directory, String... welcomeFiles) {
+        ResourceNode node = find(directory);
+        if (node == null || !node.isDirectory()) {
+            return null;
+        }
+        for (String name : welcomeFiles) {
+            ResourceNode file = node.children.get(name);
+            if (file != null && file.exists() && !file.isDirectory()) {
+                return directory.endsWith("/") ? directory + name
+                    : directory + "/" + name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the URL of the resource at a path, as
+     * {@link ServletContext#getResource} does.
+     *
+     * @param path the path of the resource, which must start with a
+     * <tt>/</tt>
+     *
+     * @return the URL of the resource, or <code>null</code> if there is
+     * no resource at that path
+     *
+     * @throws MalformedURLException if the path does not start with a
+     * <tt>/</tt>
+     */
+    public URL getResource(String path) throws MalformedURLException {
+        if (path == null || !path.startsWith("/")) {
+            throw new MalformedURLException(path);
+        }
+        ResourceNode node = find(path);
+        return (node != null) ? node.roots[0].toURL(path) : null;
+    }
+
+    /**
+     * Translates a path to the path of a file in the document root, as
+     * {@link ServletContext#getRealPath} does.  Resources that are only
+     * found in JAR files have no real path.
+     *
+     * @param path the <i>virtual</i> path to be translated to a
+     * <i>real</i> path
+     *
+     * @return the <i>real</i> path, or <tt>null</tt> if the
+     * translation cannot be performed
+     */
+    public String getRealPath(String path) {
+        if (documentRoot == null || path == null || !path.startsWith("/")) {
+            return null;
+        }
+        ResourceNode node = find(path);
+        if (node != null) {
+            return (node.roots[0] == documentRoot)
+                ? documentRoot.resolve(path).toString() : null;
+        }
+        // a resource that does not exist yet, as long as the path cannot
+        // leave the document root
+        for (int pos = 0, len = path.length(); pos < len;) {
+            int start = pos + 1;
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = len;
+            }
+            if (path.startsWith(".", start)
+                    && (end == start + 1 || (end == start + 2 && path.charAt(start + 1) == '.'))) {
+                return null;
+            }
+            pos = end;
+        }
+        return documentRoot.resolve(path).toString();
+    }
+
+    /**
+     * Starts updating the index as files are added to and removed from
+     * the document root.  Does nothing if the index is already updated,
+     * or has no document root.
+     *
+     * @throws IOException if the document root cannot be watched
+     */
+    public synchronized void watch() throws IOException {
+        if (watchService != null || documentRoot == null) {
+            return;
+        }
+        watchService = documentRoot.directory.getFileSystem().newWatchService();
+        final WatchService ws = watchService;
+        // the directories are listed again after they are registered, so
+        // that no file created meanwhile is missed
+        for (String p : register(documentRoot.directory)) {
+            add(documentRoot, p);
+        }
+        Thread t = new Thread(() -> watchLoop(ws), "ResourceIndex watcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Stops updating the index.  The index still answers lookups.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+            watchService = null;
+            watchedDirectories.clear();
+        }
+    }
+
+    private void watchLoop(WatchService ws) {
+        for (;;) {
+            WatchKey key;
+            try {
+                key = ws.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            synchronized (this) {
+                if (ws != watchService) {
+                    return;
+                }
+                try {
+                    Path dir = watchedDirectories.get(key);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (dir == null) {
+                            break;
+                        }
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            stale = true;
+                            continue;
+                        }
+                        try {
+                            apply(dir, event);
+                        } catch (IOException e) {
+                            // a directory that cannot be walked may hide
+                            // changes: list the document root again
+                            stale = true;
+                        }
+                    }
+                    if (stale) {
+                        relist();
+                    }
+                } catch (IOException e) {
+                    // the document root cannot be listed: try again on
+                    // the next change
+                } catch (ClosedWatchServiceException e) {
+                    return;
+                } finally {
+                    if (!key.reset()) {
+                        watchedDirectories.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Applies the change a watch event reports in the directory dir.
+     */
+    private void apply(Path dir, WatchEvent<?> event) throws IOException {
+        Path file = dir.resolve((Path) event.context());
+        String path = documentRoot.toPath(file);
+        if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+            remove(documentRoot, path);
+        } else if (Files.isDirectory(file)) {
+            for (String p : register(file)) {
+                add(documentRoot, p);
+            }
+        } else {
+            add(documentRoot, path);
+        }
+    }
+
+    /*
+     * Lists the document root again into a copy of the rest of the index,
+     * which then replaces it, after events were lost or could not be
+     * applied.
+     */
+    private void relist() throws IOException {
+        ResourceNode fresh = root.copyWithout(documentRoot);
+        for (String p : register(documentRoot.directory)) {
+            add(fresh, documentRoot, p);
+        }
+        root = fresh;
+        stale = false;
+    }
+
+    /*
+     * Registers the directories below and including dir with the watch
+     * service, and lists the paths of their content.
+     */
+    private List<String> register(Path dir) throws IOException {
+        final List<String> paths = new ArrayList<>();
+        Files.walkFileTree(dir, FOLLOW_LINKS, Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs)
+                    throws IOException {
+                WatchKey key = d.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+                watchedDirectories.put(key, d);
+                paths.add(documentRoot.toPath(d) + (d.equals(documentRoot.directory) ? "" : "/"));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path f, BasicFileAttributes attrs) {
+                paths.add(documentRoot.toPath(f));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path f, IOException e)
+                    throws IOException {
+                if (e instanceof NoSuchFileException) {
+                    // deleted while walked, which is reported next
+                    return FileVisitResult.CONTINUE;
+                }
+                return skipLoop(e);
+            }
+        });
+        return paths;
+    }
+
+    private static List<String> listDirectory(final Path dir) throws IOException {
+        final List<String> paths = new ArrayList<>();
+        Files.walkFileTree(dir, FOLLOW_LINKS, Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) {
+                if (!d.equals(dir)) {
+                    paths.add(toPath(dir, d) + "/");
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path f, BasicFileAttributes attrs) {
+                paths.add(toPath(dir, f));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path f, IOException e)
+                    throws IOException {
+                return skipLoop(e);
+            }
+        });
+        return paths;
+    }
+
+    /*
+     * Skips a symbolic link to a directory above it, which would be
+     * walked forever, and fails on any other error.
+     */
+    private static FileVisitResult skipLoop(IOException e) throws IOException {
+        if (e instanceof FileSystemLoopException) {
+            return FileVisitResult.CONTINUE;
+        }
+        throw e;
+    }
+
+    private static List<String> listJar(Path jar) throws IOException {
+        List<String> paths = new ArrayList<>();
+        try (JarFile jf = new JarFile(jar.toFile())) {
+            for (Enumeration<JarEntry> e = jf.entries(); e.hasMoreElements();) {
+                String name = e.nextElement().getName();
+                if (name.startsWith(JAR_RESOURCES) && name.length() > JAR_RESOURCES.length()) {
+                    paths.add(name.substring(JAR_RESOURCES.length() - 1));
+                }
+            }
+        }
+        return paths;
+    }
+
+    static String toPath(Path dir, Path file) {
+        StringBuilder sb = new StringBuilder();
+        for (Path name : dir.relativize(file)) {
+            sb.append('/').append(name);
+        }
+        return (sb.length() == 0) ? "/" : sb.toString();
+    }
+
+    private synchronized void add(ResourceRoot r, String path) {
+        add(root, r, path);
+    }
+
+    /*
+     * Adds a resource of a root, and the directories above it, to the
+     * tree below top.  Paths ending with '/' are directories.
+     */
+    private static void add(ResourceNode top, ResourceRoot r, String path) {
+        ResourceNode node = top;
+        node.addRoot(r);
+        int len = path.length();
+        for (int pos = 0; pos < len;) {
+            int start = pos + 1;
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = len;
+            }
+            if (end > start) {
+                String name = path.substring(start, end);
+                ResourceNode child = node.children.get(name);
+                if (child == null) {
+                    child = new ResourceNode();
+                    node.children.put(name, child);
+                }
+                node.directory = true;
+                node = child;
+                node.addRoot(r);
+            }
+            pos = end;
+        }
+        if (path.endsWith("/")) {
+            node.directory = true;
+        }
+    }
+
+    /*
+     * Removes a resource of a root, and everything below it.
+     */
+    private synchronized void remove(ResourceRoot r, String path) {
+        ResourceNode parent = null;
+        String name = null;
+        ResourceNode node = root;
+        int len = path.length();
+        for (int pos = 0; pos < len && node != null;) {
+            int start = pos + 1;
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = len;
+            }
+            if (end > start) {
+                parent = node;
+                name = path.substring(start, end);
+                node = node.children.get(name);
+            }
+            pos = end;
+        }
+        if (node != null) {
+            node.removeRoot(r);
+            if (!node.exists() && parent != null) {
+                parent.children.remove(name, node);
+            }
+        }
+    }
+
+    private ResourceNode find(String path) {
+        if (path == null || !path.startsWith("/")) {
+            return null;
+        }
+        ResourceNode node = root;
+        int len = path.length();
+        for (int pos = 0; pos < len && node != null;) {
+            int start = pos + 1;
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = len;
+            }
+            if (end > start) {
+                node = node.children.get(path.substring(start, end));
+            }
+            pos = end;
+        }
+        return (node != null && node.exists()) ? node : null;
+    }
+}
+
+
+// file private
+final class ResourceRoot {
+
+    final int priority;
+    final Path directory;
+    final Path jar;
+
+    ResourceRoot(int priority, Path directory, Path jar) {
+        this.priority = priority;
+        this.directory = directory;
+        this.jar = jar;
+    }
+
+    Path resolve(String path) {
+        Path p = directory;
+        for (String name : path.split("/")) {
+            if (!name.isEmpty()) {
+                p = p.resolve(name);
+            }
+        }
+        return p;
+    }
+
+    String toPath(Path file) {
+        return ResourceIndex.toPath(directory, file);
+    }
+
+    URL toURL(String path) throws MalformedURLException {
+        if (directory != null) {
+            return resolve(path).toUri().toURL();
+        }
+        return new URL("jar:" + jar.toUri() + "!/META-INF/resources" + path);
+    }
+}
+
+
+// file private
+final class ResourceNode {
+
+    private static final ResourceRoot[] NO_ROOTS = new ResourceRoot[0];
+
+    final ConcurrentHashMap<String, ResourceNode> children =
+        new ConcurrentHashMap<>();
+
+    // the roots that contain this resource, by priority
+    volatile ResourceRoot[] roots = NO_ROOTS;
+    volatile boolean directory;
+
+    boolean exists() {
+        return roots.length > 0;
+    }
+
+    boolean isDirectory() {
+        return directory;
+    }
+
+    void addRoot(ResourceRoot r) {
+        ResourceRoot[] rs = roots;
+        int i = 0;
+        while (i < rs.length && rs[i].priority < r.priority) {
+            i++;
+        }
+        if (i < rs.length && rs[i] == r) {
+            return;
+        }
+        ResourceRoot[] n = new ResourceRoot[rs.length + 1];
+        System.arraycopy(rs, 0, n, 0, i);
+        n[i] = r;
+        System.arraycopy(rs, i, n, i + 1, rs.length - i);
+        roots = n;
+    }
+
+    /*
+     * Returns a copy of this node and the nodes below it without a root,
+     * leaving out the nodes that only it contains.
+     */
+    ResourceNode copyWithout(ResourceRoot r) {
+        ResourceNode copy = new ResourceNode();
+        copy.directory = directory;
+        for (ResourceRoot root : roots) {
+            if (root != r) {
+                copy.addRoot(root);
+            }
+        }
+        for (Map.Entry<String, ResourceNode> e : children.entrySet()) {
+            ResourceNode child = e.getValue().copyWithout(r);
+            if (child.exists()) {
+                copy.children.put(e.getKey(), child);
+            }
+        }
+        return copy;
+    }
+
+    /*
+     * Removes a root from this node and the nodes below it, dropping the
+     * nodes left without roots.
+     */
+    void removeRoot(ResourceRoot r) {
+        ResourceRoot[] rs = roots;
+        int i = Arrays.asList(rs).indexOf(r);
+        if (i < 0) {
+            return;
+        }
+        ResourceRoot[] n = new ResourceRoot[rs.length - 1];
+        System.arraycopy(rs, 0, n, 0, i);
+        System.arraycopy(rs, i + 1, n, i, rs.length - i - 1);
+        for (Map.Entry<String, ResourceNode> e : children.entrySet()) {
+            ResourceNode child = e.getValue();
+            child.removeRoot(r);
+            if (!child.exists()) {
+                children.remove(e.getKey(), child);
+            }
+        }
+        roots = n;
+    }
+}
@@ -17,8 +17,11 @@
 
 package javax.servlet;
 
+import java.io.EOFException;
 import java.io.InputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * 
@@ -45,6 +48,12 @@ import java.io.IOException;
 
 public abstract class ServletInputStream extends InputStream {
 
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+
+    private static final int LINE_BUFFER_SIZE = 1024;
+
+    // the bytes read ahead by readLineBulk, allocated on first use
+    private byte[] lineBuffer;
 
 
     /**
@@ -67,6 +76,14 @@ public abstract class ServletInputStream extends InputStream {
      * <p>This method returns -1 if it reaches the end of the input
      * stream before reading the maximum number of bytes.
      *
+     * <p>If the stream supports {@link #mark}, the bytes are read in
+     * bulk and the stream is reset to the end of the line, instead of
+     * being read one byte at a time.  Other streams, which include most
+     * streams of containers, are still read one byte at a time, since
+     * the bytes read past the end of the line could not be given back
+     * to them; containers can support <code>mark</code> or override
+     * this method to read lines from their own buffer.
+     *
      *
      *
      * @param b 		an array of bytes into which data is read
@@ -88,6 +105,9 @@ public abstract class ServletInputStream extends InputStream {
 	if (len <= 0) {
 	    return 0;
 	}
+	if (markSupported()) {
+	    return readLineBulk(b, off, len);
+	}
 	int count = 0, c;
 
 	while ((c = read()) != -1) {
@@ -101,6 +121,87 @@ public abstract class ServletInputStream extends InputStream {
     }
 
 
+    /*
+     * readLine for streams that support mark: reads a chunk ahead into a
+     * private buffer, looks for the end of the line in it and copies
+     * just the bytes of the line to the caller's array, then resets the
+     * stream and skips those bytes so that whatever follows the line is
+     * read again by the next call.  The caller's array is not written
+     * past the end of the line.
+     */
+    private int readLineBulk(byte[] b, int off, int len) throws IOException {
+	if (lineBuffer == null) {
+	    lineBuffer = new byte[LINE_BUFFER_SIZE];
+	}
+	byte[] buf = lineBuffer;
+	int count = 0;
+
+	while (count < len) {
+	    int max = Math.min(len - count, buf.length);
+	    mark(max);
+	    int n = read(buf, 0, max);
+	    if (n <= 0) {
+		break;
+	    }
+	    int nl = indexOfNewline(buf, 0, n);
+	    int consumed = (nl < 0) ? n : nl + 1;
+	    System.arraycopy(buf, 0, b, off + count, consumed);
+	    if (consumed < n) {
+		reset();
+		skipFully(consumed);
+	    }
+	    count += consumed;
+	    if (nl >= 0) {
+		break;
+	    }
+	}
+	return count > 0 ? count : -1;
+    }
+
+
+    private void skipFully(long n) throws IOException {
+	while (n > 0) {
+	    long skipped = skip(n);
+	    if (skipped <= 0) {
+		if (read() == -1) {
+		    throw new EOFException();
+		}
+		skipped = 1;
+	    }
+	    n -= skipped;
+	}
+    }
+
+
+    /*
+     * Returns the index of the first '\n' in b[from, to), or -1.  Eight
+     * bytes are tested at a time: XOR-ing a word with a word of newlines
+     * turns newline bytes into zero bytes, and the classic "has zero
+     * byte" expression finds them.  The bytes are loaded little-endian,
+     * so the lowest flagged byte is the first newline; false positives
+     * of that expression only occur above a true zero byte.
+     */
+    private static int indexOfNewline(byte[] b, int from, int to) {
+	int i = from;
+	if (to - from >= 8) {
+	    ByteBuffer words = ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+	    for (; i + 8 <= to; i += 8) {
+		long x = words.getLong(i) ^ NEWLINES;
+		long t = (x - 0x0101010101010101L) & ~x & 0x8080808080808080L;
+		if (t != 0) {
+		    return i + (Long.numberOfTrailingZeros(t) >>> 3);
+		}
+	    }
+	}
+	for (; i < to; i++) {
+	    if (b[i] == '\n') {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+
     /**
      * Returns true when all the data from the stream has been read else
      * it returns false.
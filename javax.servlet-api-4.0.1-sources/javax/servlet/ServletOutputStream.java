@@ -20,6 +20,8 @@ package javax.servlet;
 import java.io.OutputStream;
 import java.io.IOException;
 import java.io.CharConversionException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.MessageFormat;
 import java.util.ResourceBundle;
 
@@ -46,6 +48,34 @@ public abstract class ServletOutputStream extends OutputStream  {
     private static ResourceBundle lStrings =
         ResourceBundle.getBundle(LSTRING_FILE);
 
+    // the characters encoded per write(byte[], int, int) call by print;
+    // at least 20, the length of any long with its sign
+    private static final int SCRATCH_SIZE = 512;
+
+    /*
+     * Whether a class overrides print(String), in which case the other
+     * print and println methods go through it, as they always did.
+     */
+    private static final ClassValue<Boolean> PRINT_OVERRIDDEN =
+        new ClassValue<Boolean>() {
+            @Override
+            protected Boolean computeValue(Class<?> type) {
+                try {
+                    return type.getMethod("print", String.class)
+                        .getDeclaringClass() != ServletOutputStream.class;
+                } catch (NoSuchMethodException | SecurityException e) {
+                    return Boolean.TRUE;
+                }
+            }
+        };
+
+    // largest amount copied by a single transferFrom call, and by each
+    // write of direct or gathered buffers in blocking mode
+    private static final int TRANSFER_SIZE = 64 * 1024;
+
+    private byte[] scratch;
+    private ByteBuffer transferBuffer;
+
 
     
     /**
@@ -72,24 +102,92 @@ public abstract class ServletOutputStream extends OutputStream  {
     public void print(String s) throws IOException {
         if (s==null) s="null";
         int len = s.length();
-        for (int i = 0; i < len; i++) {
-            char c = s.charAt (i);
-
-            //
-            // XXX NOTE:  This is clearly incorrect for many strings,
-            // but is the only consistent approach within the current
-            // servlet framework.  It must suffice until servlet output
-            // streams properly encode their output.
-            //
-            if ((c & 0xff00) != 0) {        // high order byte must be zero
-                String errMsg = lStrings.getString("err.not_iso8859_1");
-                Object[] errArgs = new Object[1];
-                errArgs[0] = Character.valueOf(c);
-                errMsg = MessageFormat.format(errMsg, errArgs);
-                throw new CharConversionException(errMsg);
+        if (len == 0) {
+            return;
+        }
+        byte[] buf = getScratchBuffer();
+        int off = 0;
+        while (off < len) {
+            int n = Math.min(len - off, buf.length);
+            for (int i = 0; i < n; i++) {
+                char c = s.charAt(off + i);
+
+                //
+                // XXX NOTE:  This is clearly incorrect for many strings,
+                // but is the only consistent approach within the current
+                // servlet framework.  It must suffice until servlet output
+                // streams properly encode their output.
+                //
+                if ((c & 0xff00) != 0) {    // high order byte must be zero
+                    // send what precedes the bad character, as the
+                    // character-at-a-time encoding used to do
+                    if (i > 0) {
+                        write(buf, 0, i);
+                    }
+                    throw notIso8859_1(c);
+                }
+                buf[i] = (byte) c;
             }
-            write (c);
+            write(buf, 0, n);
+            off += n;
+        }
+    }
+
+
+    /*
+     * Returns the buffer used to encode strings and numbers before
+     * passing them to write(byte[], int, int) in a single call.
+     */
+    private byte[] getScratchBuffer() {
+        if (scratch == null) {
+            scratch = new byte[SCRATCH_SIZE];
         }
+        return scratch;
+    }
+
+
+    /*
+     * Returns the heap buffer through which direct buffers and files
+     * are copied.
+     */
+    private ByteBuffer getTransferBuffer() {
+        if (transferBuffer == null) {
+            transferBuffer = ByteBuffer.allocate(TRANSFER_SIZE);
+        }
+        return transferBuffer;
+    }
+
+
+    private static CharConversionException notIso8859_1(char c) {
+        String errMsg = lStrings.getString("err.not_iso8859_1");
+        Object[] errArgs = new Object[1];
+        errArgs[0] = Character.valueOf(c);
+        errMsg = MessageFormat.format(errMsg, errArgs);
+        return new CharConversionException(errMsg);
+    }
+
+
+    /*
+     * Writes the decimal representation of a long, formatting the
+     * digits from the end of the scratch buffer.
+     */
+    private void printDecimal(long l) throws IOException {
+        byte[] buf = getScratchBuffer();
+        int pos = buf.length;
+        boolean negative = l < 0;
+        if (!negative) {
+            // work with negative values so that Long.MIN_VALUE fits
+            l = -l;
+        }
+        do {
+            long q = l / 10;
+            buf[--pos] = (byte) ('0' + (int) (q * 10 - l));
+            l = q;
+        } while (l != 0);
+        if (negative) {
+            buf[--pos] = '-';
+        }
+        write(buf, pos, buf.length - pos);
     }
 
 
@@ -130,7 +228,14 @@ public abstract class ServletOutputStream extends OutputStream  {
      */
 
     public void print(char c) throws IOException {
-        print(String.valueOf(c));
+        if (PRINT_OVERRIDDEN.get(getClass())) {
+            print(String.valueOf(c));
+            return;
+        }
+        if ((c & 0xff00) != 0) {
+            throw notIso8859_1(c);
+        }
+        write(c);
     }
 
 
@@ -149,7 +254,11 @@ public abstract class ServletOutputStream extends OutputStream  {
      */  
 
     public void print(int i) throws IOException {
-        print(String.valueOf(i));
+        if (PRINT_OVERRIDDEN.get(getClass())) {
+            print(String.valueOf(i));
+            return;
+        }
+        printDecimal(i);
     }
 
 
@@ -169,7 +278,11 @@ public abstract class ServletOutputStream extends OutputStream  {
      */
 
     public void print(long l) throws IOException {
-        print(String.valueOf(l));
+        if (PRINT_OVERRIDDEN.get(getClass())) {
+            print(String.valueOf(l));
+            return;
+        }
+        printDecimal(l);
     }
 
 
@@ -222,7 +335,14 @@ public abstract class ServletOutputStream extends OutputStream  {
      */
 
     public void println() throws IOException {
-        print("\r\n");
+        if (PRINT_OVERRIDDEN.get(getClass())) {
+            print("\r\n");
+            return;
+        }
+        byte[] buf = getScratchBuffer();
+        buf[0] = '\r';
+        buf[1] = '\n';
+        write(buf, 0, 2);
     }
 
 
@@ -362,6 +482,197 @@ public abstract class ServletOutputStream extends OutputStream  {
         println();
     }
 
+    /**
+     * Writes the remaining bytes of a <code>ByteBuffer</code> to the
+     * client. On return the position of the buffer is equal to its limit.
+     *
+     * <p>In non-blocking mode this counts as a single write: it may only
+     * be called after {@link #isReady} has returned <code>true</code>,
+     * and the whole buffer is accepted, exactly as for
+     * {@link #write(byte[], int, int)}.
+     *
+     * <p>The default implementation passes the backing array of a heap
+     * buffer to {@link #write(byte[], int, int)}, and copies a direct
+     * buffer of up to 64 KiB into a buffer owned by this stream first.
+     * A larger direct buffer is copied into a new array of its size if
+     * {@link #isNonBlocking} returns <code>true</code>, so that it is
+     * still written in a single call, and otherwise through the buffer
+     * owned by this stream, 64 KiB at a time. Containers should override
+     * this method to write direct buffers without copying them.
+     *
+     * @param src the buffer whose remaining bytes are written
+     *
+     * @exception IOException if an input or output exception occurred
+     *
+     * @throws NullPointerException if <code>src</code> is null
+     *
+     * @since Servlet 4.0
+     */
+    public void write(ByteBuffer src) throws IOException {
+        int len = src.remaining();
+        if (len == 0) {
+            return;
+        }
+        if (src.hasArray()) {
+            write(src.array(), src.arrayOffset() + src.position(), len);
+            src.position(src.limit());
+        } else if (len > TRANSFER_SIZE && isNonBlocking()) {
+            byte[] b = new byte[len];
+            src.get(b);
+            write(b, 0, len);
+        } else {
+            byte[] b = getTransferBuffer().array();
+            while (len > 0) {
+                int n = Math.min(len, b.length);
+                src.get(b, 0, n);
+                write(b, 0, n);
+                len -= n;
+            }
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of a sequence of buffers to the client,
+     * in order. On return the position of each buffer is equal to its
+     * limit.
+     *
+     * <p>In non-blocking mode this counts as a single write, as
+     * described for {@link #write(ByteBuffer)}.
+     *
+     * <p>The default implementation writes a buffer alone with
+     * {@link #write(ByteBuffer)} if it is the only one with remaining
+     * bytes. Otherwise it gathers up to 64 KiB into a buffer owned by
+     * this stream and writes it in a single call. More bytes are
+     * gathered into a new array of their size if {@link #isNonBlocking}
+     * returns <code>true</code>, and otherwise each buffer is written
+     * with {@link #write(ByteBuffer)}. Containers should override this
+     * method to hand the buffers to a gathering channel write.
+     *
+     * @param srcs the buffers whose remaining bytes are written
+     *
+     * @exception IOException if an input or output exception occurred
+     *
+     * @throws NullPointerException if <code>srcs</code> or any of its
+     * elements is null
+     *
+     * @since Servlet 4.0
+     */
+    public void write(ByteBuffer[] srcs) throws IOException {
+        long total = 0;
+        ByteBuffer last = null;
+        int nonEmpty = 0;
+        for (ByteBuffer src : srcs) {
+            int remaining = src.remaining();
+            if (remaining > 0) {
+                total += remaining;
+                last = src;
+                nonEmpty++;
+            }
+        }
+        if (nonEmpty == 0) {
+            return;
+        }
+        if (nonEmpty == 1) {
+            write(last);
+            return;
+        }
+        byte[] b;
+        if (total <= TRANSFER_SIZE) {
+            b = getTransferBuffer().array();
+        } else if (isNonBlocking()) {
+            if (total > Integer.MAX_VALUE) {
+                throw new IOException(lStrings.getString("err.io.gatherTooLarge"));
+            }
+            b = new byte[(int) total];
+        } else {
+            for (ByteBuffer src : srcs) {
+                write(src);
+            }
+            return;
+        }
+        int off = 0;
+        for (ByteBuffer src : srcs) {
+            int remaining = src.remaining();
+            src.get(b, off, remaining);
+            off += remaining;
+        }
+        write(b, 0, (int) total);
+    }
+
+    /**
+     * Returns whether this stream is in non-blocking mode, in which each
+     * of {@link #write(ByteBuffer)} and {@link #write(ByteBuffer[])}
+     * must make a single call to {@link #write(byte[], int, int)}.
+     *
+     * <p>The default implementation returns <code>true</code>, since
+     * a single call is correct in either mode. Containers that do not
+     * override those methods should override this one to return whether
+     * a {@link WriteListener} has been set, so that large buffers are
+     * written through a bounded buffer in blocking mode.
+     *
+     * @return <code>true</code> if this stream may be in non-blocking
+     * mode
+     *
+     * @since Servlet 4.0
+     */
+    protected boolean isNonBlocking() {
+        return true;
+    }
+
+    /**
+     * Transfers bytes from a region of a file to the client, in the same
+     * way as {@link FileChannel#transferTo}. The position of the channel
+     * is not modified.
+     *
+     * <p>Fewer than <code>count</code> bytes may be transferred, so
+     * callers must call this method again, with <code>position</code>
+     * advanced by the returned amount, until the region has been sent.
+     * In non-blocking mode each call counts as a single write, so it may
+     * only be called after {@link #isReady} has returned
+     * <code>true</code>; the {@link WriteListener#onWritePossible}
+     * callback is the place to continue the transfer.
+     *
+     * <p>The default implementation copies up to 64 KiB per call
+     * through a buffer owned by this stream. Containers should override
+     * this method to use {@link FileChannel#transferTo} or the
+     * equivalent of <code>sendfile</code>.
+     *
+     * @param src      the file to read from
+     * @param position the position in the file of the first byte to
+     *                 transfer
+     * @param count    the maximum number of bytes to transfer
+     *
+     * @return the number of bytes transferred, which is zero if
+     * <code>position</code> is at or beyond the end of the file
+     *
+     * @exception IOException if an input or output exception occurred
+     *
+     * @throws IllegalArgumentException if <code>position</code> or
+     * <code>count</code> is negative
+     *
+     * @since Servlet 4.0
+     */
+    public long transferFrom(FileChannel src, long position, long count)
+            throws IOException {
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException();
+        }
+        if (count == 0) {
+            return 0;
+        }
+        ByteBuffer buf = getTransferBuffer();
+        buf.clear();
+        if (count < buf.capacity()) {
+            buf.limit((int) count);
+        }
+        int n = src.read(buf, position);
+        if (n <= 0) {
+            return 0;
+        }
+        write(buf.array(), buf.arrayOffset(), n);
+        return n;
+    }
+
     /**
      * This method can be used to determine if data can be written without blocking.
      *
@@ -37,8 +37,56 @@ import java.util.Map;
 
 public class ServletRequestWrapper implements ServletRequest {
 
+    // the delegating methods of request wrappers
+    private static final WrapperMethods METHODS =
+        new WrapperMethods(ServletRequestWrapper.class);
+
+    private static final int GET_ATTRIBUTE = method("getAttribute", String.class);
+    private static final int GET_ATTRIBUTE_NAMES = method("getAttributeNames");
+    private static final int GET_CHARACTER_ENCODING = method("getCharacterEncoding");
+    private static final int SET_CHARACTER_ENCODING = method("setCharacterEncoding", String.class);
+    private static final int GET_CONTENT_LENGTH = method("getContentLength");
+    private static final int GET_CONTENT_LENGTH_LONG = method("getContentLengthLong");
+    private static final int GET_CONTENT_TYPE = method("getContentType");
+    private static final int GET_INPUT_STREAM = method("getInputStream");
+    private static final int GET_PARAMETER = method("getParameter", String.class);
+    private static final int GET_PARAMETER_MAP = method("getParameterMap");
+    private static final int GET_PARAMETER_NAMES = method("getParameterNames");
+    private static final int GET_PARAMETER_VALUES = method("getParameterValues", String.class);
+    private static final int GET_PROTOCOL = method("getProtocol");
+    private static final int GET_SCHEME = method("getScheme");
+    private static final int GET_SERVER_NAME = method("getServerName");
+    private static final int GET_SERVER_PORT = method("getServerPort");
+    private static final int GET_READER = method("getReader");
+    private static final int GET_REMOTE_ADDR = method("getRemoteAddr");
+    private static final int GET_REMOTE_HOST = method("getRemoteHost");
+    private static final int SET_ATTRIBUTE = method("setAttribute", String.class, Object.class);
+    private static final int REMOVE_ATTRIBUTE = method("removeAttribute", String.class);
+    private static final int GET_LOCALE = method("getLocale");
+    private static final int GET_LOCALES = method("getLocales");
+    private static final int IS_SECURE = method("isSecure");
+    private static final int GET_REQUEST_DISPATCHER = method("getRequestDispatcher", String.class);
+    private static final int GET_REAL_PATH = method("getRealPath", String.class);
+    private static final int GET_REMOTE_PORT = method("getRemotePort");
+    private static final int GET_LOCAL_NAME = method("getLocalName");
+    private static final int GET_LOCAL_ADDR = method("getLocalAddr");
+    private static final int GET_LOCAL_PORT = method("getLocalPort");
+    private static final int GET_SERVLET_CONTEXT = method("getServletContext");
+    private static final int START_ASYNC = method("startAsync");
+    private static final int START_ASYNC_WITH_REQUEST = method("startAsync", ServletRequest.class, ServletResponse.class);
+    private static final int IS_ASYNC_STARTED = method("isAsyncStarted");
+    private static final int IS_ASYNC_SUPPORTED = method("isAsyncSupported");
+    private static final int GET_ASYNC_CONTEXT = method("getAsyncContext");
+    private static final int GET_DISPATCHER_TYPE = method("getDispatcherType");
+    private static final int IS_WRAPPER_FOR = method("isWrapperFor", ServletRequest.class);
+    private static final int IS_WRAPPER_FOR_TYPE = method("isWrapperFor", Class.class);
+
     private ServletRequest request;
 
+    // the delegating methods overridden by the class of this wrapper
+    private final WrapperMethods.Overrides overrides =
+        METHODS.overrides(getClass());
+
     /**
      * Creates a ServletRequest adaptor wrapping the given request object. 
      * @throws java.lang.IllegalArgumentException if the request is null
@@ -79,12 +127,75 @@ public class ServletRequestWrapper implements ServletRequest {
     }
 
 
+    /**
+     * Registers a method of a wrapper class that calls through to the
+     * wrapped request, typically from a static initializer of that class.
+     * {@link #getDelegate} skips a wrapper in a chain only when its class
+     * inherits the method from the wrapper class and neither it nor any
+     * class in between declares a method with the same name and parameter
+     * types, so that calls do not pass through one more layer of the
+     * chain.  Wrappers of any other class are never skipped.
+     *
+     * <p>All the methods of {@link ServletRequest} are registered by this
+     * class, and all the methods of
+     * {@link javax.servlet.http.HttpServletRequest} by
+     * {@link javax.servlet.http.HttpServletRequestWrapper}.
+     *
+     * @param wrapperClass the wrapper class that declares the method
+     * @param name the name of the method
+     * @param parameterTypes the parameter types of the method
+     *
+     * @return the index of the method, to be passed to
+     * {@link #getDelegate}
+     *
+     * @throws IllegalArgumentException if <code>wrapperClass</code> is
+     * not a subclass of <code>ServletRequestWrapper</code>
+     *
+     * @since Servlet 4.0
+     */
+    protected static int delegatingMethod(
+            Class<? extends ServletRequestWrapper> wrapperClass, String name,
+            Class<?>... parameterTypes) {
+        return METHODS.register(wrapperClass, name, parameterTypes);
+    }
+
+
+    private static int method(String name, Class<?>... parameterTypes) {
+        return delegatingMethod(ServletRequestWrapper.class, name, parameterTypes);
+    }
+
+
+    /**
+     * Gets the request that a delegating method of this wrapper calls
+     * through to.  This is the wrapped request, unless it is a wrapper
+     * whose class does not override the method, in which case the
+     * wrappers that would only pass the call on are skipped.
+     *
+     * @param method the index returned by {@link #delegatingMethod}
+     *
+     * @return the request to call the method on
+     *
+     * @since Servlet 4.0
+     */
+    protected final ServletRequest getDelegate(int method) {
+        ServletRequest r = this.request;
+        while (r instanceof ServletRequestWrapper) {
+            ServletRequestWrapper w = (ServletRequestWrapper) r;
+            if (w.overrides.overrides(method)) {
+                break;
+            }
+            r = w.request;
+        }
+        return r;
+    }
+
+
     /**
      * The default behavior of this method is to call getAttribute(String name)
      * on the wrapped request object.
      */
     public Object getAttribute(String name) {
-        return this.request.getAttribute(name);
+        return getDelegate(GET_ATTRIBUTE).getAttribute(name);
     }
 
 
@@ -93,7 +204,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * on the wrapped request object.
      */
     public Enumeration<String> getAttributeNames() {
-        return this.request.getAttributeNames();
+        return getDelegate(GET_ATTRIBUTE_NAMES).getAttributeNames();
     }    
 
 
@@ -102,7 +213,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * on the wrapped request object.
      */
     public String getCharacterEncoding() {
-        return this.request.getCharacterEncoding();
+        return getDelegate(GET_CHARACTER_ENCODING).getCharacterEncoding();
     }
 
 
@@ -112,7 +223,7 @@ public class ServletRequestWrapper implements ServletRequest {
      */
     public void setCharacterEncoding(String enc)
             throws UnsupportedEncodingException {
-        this.request.setCharacterEncoding(enc);
+        getDelegate(SET_CHARACTER_ENCODING).setCharacterEncoding(enc);
     }
 
 
@@ -121,7 +232,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * on the wrapped request object.
      */
     public int getContentLength() {
-        return this.request.getContentLength();
+        return getDelegate(GET_CONTENT_LENGTH).getContentLength();
     }
 
     /**
@@ -131,7 +242,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * @since Servlet 3.1
      */
     public long getContentLengthLong() {
-        return this.request.getContentLengthLong();
+        return getDelegate(GET_CONTENT_LENGTH_LONG).getContentLengthLong();
     }
 
 
@@ -140,7 +251,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * on the wrapped request object.
      */
     public String getContentType() {
-        return this.request.getContentType();
+        return getDelegate(GET_CONTENT_TYPE).getContentType();
     }
 
 
@@ -149,7 +260,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * on the wrapped request object.
      */
     public ServletInputStream getInputStream() throws IOException {
-        return this.request.getInputStream();
+        return getDelegate(GET_INPUT_STREAM).getInputStream();
     }
 
 
@@ -158,7 +269,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * getParameter(String name) on the wrapped request object.
      */
     public String getParameter(String name) {
-        return this.request.getParameter(name);
+        return getDelegate(GET_PARAMETER).getParameter(name);
     }
 
 
@@ -167,7 +278,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * on the wrapped request object.
      */
     public Map<String, String[]> getParameterMap() {
-        return this.request.getParameterMap();
+        return getDelegate(GET_PARAMETER_MAP).getParameterMap();
     }
 
 
@@ -176,7 +287,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * on the wrapped request object.
      */
     public Enumeration<String> getParameterNames() {
-        return this.request.getParameterNames();
+        return getDelegate(GET_PARAMETER_NAMES).getParameterNames();
     }
 
 
@@ -185,7 +296,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * getParameterValues(String name) on the wrapped request object.
      */
     public String[] getParameterValues(String name) {
-        return this.request.getParameterValues(name);
+        return getDelegate(GET_PARAMETER_VALUES).getParameterValues(name);
     }
 
 
@@ -194,7 +305,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * on the wrapped request object.
      */
     public String getProtocol() {
-        return this.request.getProtocol();
+        return getDelegate(GET_PROTOCOL).getProtocol();
     }
 
 
@@ -203,7 +314,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * on the wrapped request object.
      */
     public String getScheme() {
-        return this.request.getScheme();
+        return getDelegate(GET_SCHEME).getScheme();
     }
 
 
@@ -212,7 +323,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * on the wrapped request object.
      */
     public String getServerName() {
-        return this.request.getServerName();
+        return getDelegate(GET_SERVER_NAME).getServerName();
     }
 
 
@@ -221,7 +332,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * on the wrapped request object.
      */
     public int getServerPort() {
-        return this.request.getServerPort();
+        return getDelegate(GET_SERVER_PORT).getServerPort();
     }
 
 
@@ -230,7 +341,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * on the wrapped request object.
      */
     public BufferedReader getReader() throws IOException {
-        return this.request.getReader();
+        return getDelegate(GET_READER).getReader();
     }
 
 
@@ -239,7 +350,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * on the wrapped request object.
      */
     public String getRemoteAddr() {
-        return this.request.getRemoteAddr();
+        return getDelegate(GET_REMOTE_ADDR).getRemoteAddr();
     }
 
 
@@ -248,7 +359,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * on the wrapped request object.
      */
     public String getRemoteHost() {
-        return this.request.getRemoteHost();
+        return getDelegate(GET_REMOTE_HOST).getRemoteHost();
     }
 
 
@@ -257,7 +368,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * setAttribute(String name, Object o) on the wrapped request object.
      */
     public void setAttribute(String name, Object o) {
-        this.request.setAttribute(name, o);
+        getDelegate(SET_ATTRIBUTE).setAttribute(name, o);
     }
 
 
@@ -266,7 +377,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * removeAttribute(String name) on the wrapped request object.
      */
     public void removeAttribute(String name) {
-        this.request.removeAttribute(name);
+        getDelegate(REMOVE_ATTRIBUTE).removeAttribute(name);
     }
 
 
@@ -275,7 +386,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * on the wrapped request object.
      */
     public Locale getLocale() {
-        return this.request.getLocale();
+        return getDelegate(GET_LOCALE).getLocale();
     }
 
 
@@ -284,7 +395,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * on the wrapped request object.
      */
     public Enumeration<Locale> getLocales() {
-        return this.request.getLocales();
+        return getDelegate(GET_LOCALES).getLocales();
     }
 
 
@@ -293,7 +404,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * on the wrapped request object.
      */
     public boolean isSecure() {
-        return this.request.isSecure();
+        return getDelegate(IS_SECURE).isSecure();
     }
 
 
@@ -302,7 +413,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * getRequestDispatcher(String path) on the wrapped request object.
      */
     public RequestDispatcher getRequestDispatcher(String path) {
-        return this.request.getRequestDispatcher(path);
+        return getDelegate(GET_REQUEST_DISPATCHER).getRequestDispatcher(path);
     }
 
 
@@ -315,7 +426,7 @@ public class ServletRequestWrapper implements ServletRequest {
      */
     @Deprecated
     public String getRealPath(String path) {
-        return this.request.getRealPath(path);
+        return getDelegate(GET_REAL_PATH).getRealPath(path);
     }
 
     
@@ -326,7 +437,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * @since Servlet 2.4
      */    
     public int getRemotePort(){
-        return this.request.getRemotePort();
+        return getDelegate(GET_REMOTE_PORT).getRemotePort();
     }
 
 
@@ -337,7 +448,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * @since Servlet 2.4
      */
     public String getLocalName(){
-        return this.request.getLocalName();
+        return getDelegate(GET_LOCAL_NAME).getLocalName();
     }
 
 
@@ -348,7 +459,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * @since Servlet 2.4
      */       
     public String getLocalAddr(){
-        return this.request.getLocalAddr();
+        return getDelegate(GET_LOCAL_ADDR).getLocalAddr();
     }
 
 
@@ -359,7 +470,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * @since Servlet 2.4
      */
     public int getLocalPort(){
-        return this.request.getLocalPort();
+        return getDelegate(GET_LOCAL_PORT).getLocalPort();
     }
 
 
@@ -373,7 +484,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * @since Servlet 3.0
      */
     public ServletContext getServletContext() {
-        return request.getServletContext();
+        return getDelegate(GET_SERVLET_CONTEXT).getServletContext();
     }
 
 
@@ -397,7 +508,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * @since Servlet 3.0
      */
     public AsyncContext startAsync() throws IllegalStateException {
-        return request.startAsync();
+        return getDelegate(START_ASYNC).startAsync();
     }
     
 
@@ -429,7 +540,7 @@ public class ServletRequestWrapper implements ServletRequest {
     public AsyncContext startAsync(ServletRequest servletRequest,
                                    ServletResponse servletResponse)
             throws IllegalStateException {
-        return request.startAsync(servletRequest, servletResponse);
+        return getDelegate(START_ASYNC_WITH_REQUEST).startAsync(servletRequest, servletResponse);
     }
 
 
@@ -444,7 +555,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * @since Servlet 3.0
      */
     public boolean isAsyncStarted() {
-        return request.isAsyncStarted();
+        return getDelegate(IS_ASYNC_STARTED).isAsyncStarted();
     }
 
 
@@ -459,7 +570,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * @since Servlet 3.0
      */
     public boolean isAsyncSupported() {
-        return request.isAsyncSupported();
+        return getDelegate(IS_ASYNC_SUPPORTED).isAsyncSupported();
     }
 
 
@@ -483,7 +594,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * @since Servlet 3.0
      */
     public AsyncContext getAsyncContext() {
-        return request.getAsyncContext();
+        return getDelegate(GET_ASYNC_CONTEXT).getAsyncContext();
     }
 
 
@@ -491,6 +602,10 @@ public class ServletRequestWrapper implements ServletRequest {
      * Checks (recursively) if this ServletRequestWrapper wraps the given
      * {@link ServletRequest} instance.
      *
+     * <p>The chain of wrapped requests is followed in a loop; a wrapper
+     * in the chain is only asked to check the rest of the chain itself
+     * if its class overrides this method.
+     *
      * @param wrapped the ServletRequest instance to search for
      *
      * @return true if this ServletRequestWrapper wraps the
@@ -499,13 +614,18 @@ public class ServletRequestWrapper implements ServletRequest {
      * @since Servlet 3.0
      */
     public boolean isWrapperFor(ServletRequest wrapped) {
-        if (request == wrapped) {
-            return true;
-        } else if (request instanceof ServletRequestWrapper) {
-            return ((ServletRequestWrapper) request).isWrapperFor(wrapped);
-        } else {
-            return false;
+        ServletRequest r = this.request;
+        while (r != wrapped) {
+            if (!(r instanceof ServletRequestWrapper)) {
+                return false;
+            }
+            ServletRequestWrapper w = (ServletRequestWrapper) r;
+            if (w.overrides.overrides(IS_WRAPPER_FOR)) {
+                return w.isWrapperFor(wrapped);
+            }
+            r = w.request;
         }
+        return true;
     }
 
 
@@ -513,6 +633,10 @@ public class ServletRequestWrapper implements ServletRequest {
      * Checks (recursively) if this ServletRequestWrapper wraps a
      * {@link ServletRequest} of the given class type.
      *
+     * <p>The chain of wrapped requests is followed in a loop; a wrapper
+     * in the chain is only asked to check the rest of the chain itself
+     * if its class overrides this method.
+     *
      * @param wrappedType the ServletRequest class type to
      * search for
      *
@@ -530,13 +654,44 @@ public class ServletRequestWrapper implements ServletRequest {
                 wrappedType.getName() + " not a subinterface of " +
                 ServletRequest.class.getName());
         }
-        if (wrappedType.isAssignableFrom(request.getClass())) {
-            return true;
-        } else if (request instanceof ServletRequestWrapper) {
-            return ((ServletRequestWrapper) request).isWrapperFor(wrappedType);
-        } else {
-            return false;
+        ServletRequest r = this.request;
+        while (!wrappedType.isInstance(r)) {
+            if (!(r instanceof ServletRequestWrapper)) {
+                return false;
+            }
+            ServletRequestWrapper w = (ServletRequestWrapper) r;
+            if (w.overrides.overrides(IS_WRAPPER_FOR_TYPE)) {
+                return w.isWrapperFor(wrappedType);
+            }
+            r = w.request;
+        }
+        return true;
+    }
+
+
+    /**
+     * Returns the first request of the given type in the chain of
+     * requests wrapped by this ServletRequestWrapper, starting with the
+     * request it wraps directly.
+     *
+     * @param <T> the type of request to search for
+     *
+     * @param wrappedType the class of the request to search for
+     *
+     * @return the wrapped request, or <code>null</code> if this
+     * ServletRequestWrapper does not wrap a request of that type
+     *
+     * @since Servlet 4.0
+     */
+    public <T extends ServletRequest> T unwrap(Class<T> wrappedType) {
+        ServletRequest r = this.request;
+        while (!wrappedType.isInstance(r)) {
+            if (!(r instanceof ServletRequestWrapper)) {
+                return null;
+            }
+            r = ((ServletRequestWrapper) r).request;
         }
+        return wrappedType.cast(r);
     }
 
 
@@ -550,7 +705,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * @since Servlet 3.0
      */
     public DispatcherType getDispatcherType() {
-        return request.getDispatcherType();
+        return getDelegate(GET_DISPATCHER_TYPE).getDispatcherType();
     }
 
 
@@ -36,7 +36,36 @@ import java.util.Locale;
 
  
 public class ServletResponseWrapper implements ServletResponse {
+
+    // the delegating methods of response wrappers
+    private static final WrapperMethods METHODS =
+        new WrapperMethods(ServletResponseWrapper.class);
+
+    private static final int SET_CHARACTER_ENCODING = method("setCharacterEncoding", String.class);
+    private static final int GET_CHARACTER_ENCODING = method("getCharacterEncoding");
+    private static final int GET_OUTPUT_STREAM = method("getOutputStream");
+    private static final int GET_WRITER = method("getWriter");
+    private static final int SET_CONTENT_LENGTH = method("setContentLength", int.class);
+    private static final int SET_CONTENT_LENGTH_LONG = method("setContentLengthLong", long.class);
+    private static final int SET_CONTENT_TYPE = method("setContentType", String.class);
+    private static final int GET_CONTENT_TYPE = method("getContentType");
+    private static final int SET_BUFFER_SIZE = method("setBufferSize", int.class);
+    private static final int GET_BUFFER_SIZE = method("getBufferSize");
+    private static final int FLUSH_BUFFER = method("flushBuffer");
+    private static final int IS_COMMITTED = method("isCommitted");
+    private static final int RESET = method("reset");
+    private static final int RESET_BUFFER = method("resetBuffer");
+    private static final int SET_LOCALE = method("setLocale", Locale.class);
+    private static final int GET_LOCALE = method("getLocale");
+    private static final int IS_WRAPPER_FOR = method("isWrapperFor", ServletResponse.class);
+    private static final int IS_WRAPPER_FOR_TYPE = method("isWrapperFor", Class.class);
+
 	private ServletResponse response;
+
+    // the delegating methods overridden by the class of this wrapper
+    private final WrapperMethods.Overrides overrides =
+        METHODS.overrides(getClass());
+
 	/**
 	* Creates a ServletResponse adaptor wrapping the given response object.
 	* @throws java.lang.IllegalArgumentException if the response is null.
@@ -77,6 +106,69 @@ public class ServletResponseWrapper implements ServletResponse {
 	    this.response = response;
 	}
 
+    /**
+     * Registers a method of a wrapper class that calls through to the
+     * wrapped response, typically from a static initializer of that class.
+     * {@link #getDelegate} skips a wrapper in a chain only when its class
+     * inherits the method from the wrapper class and neither it nor any
+     * class in between declares a method with the same name and parameter
+     * types, so that calls do not pass through one more layer of the
+     * chain.  Wrappers of any other class are never skipped.
+     *
+     * <p>All the methods of {@link ServletResponse} are registered by this
+     * class, and all the methods of
+     * {@link javax.servlet.http.HttpServletResponse} by
+     * {@link javax.servlet.http.HttpServletResponseWrapper}.
+     *
+     * @param wrapperClass the wrapper class that declares the method
+     * @param name the name of the method
+     * @param parameterTypes the parameter types of the method
+     *
+     * @return the index of the method, to be passed to
+     * {@link #getDelegate}
+     *
+     * @throws IllegalArgumentException if <code>wrapperClass</code> is
+     * not a subclass of <code>ServletResponseWrapper</code>
+     *
+     * @since Servlet 4.0
+     */
+    protected static int delegatingMethod(
+            Class<? extends ServletResponseWrapper> wrapperClass, String name,
+            Class<?>... parameterTypes) {
+        return METHODS.register(wrapperClass, name, parameterTypes);
+    }
+
+
+    private static int method(String name, Class<?>... parameterTypes) {
+        return delegatingMethod(ServletResponseWrapper.class, name, parameterTypes);
+    }
+
+
+    /**
+     * Gets the response that a delegating method of this wrapper calls
+     * through to.  This is the wrapped response, unless it is a wrapper
+     * whose class does not override the method, in which case the
+     * wrappers that would only pass the call on are skipped.
+     *
+     * @param method the index returned by {@link #delegatingMethod}
+     *
+     * @return the response to call the method on
+     *
+     * @since Servlet 4.0
+     */
+    protected final ServletResponse getDelegate(int method) {
+        ServletResponse r = this.response;
+        while (r instanceof ServletResponseWrapper) {
+            ServletResponseWrapper w = (ServletResponseWrapper) r;
+            if (w.overrides.overrides(method)) {
+                break;
+            }
+            r = w.response;
+        }
+        return r;
+    }
+
+
     /**
      * The default behavior of this method is to call setCharacterEncoding(String charset)
      * on the wrapped response object.
@@ -85,7 +177,7 @@ public class ServletResponseWrapper implements ServletResponse {
      */
 
     public void setCharacterEncoding(String charset) {
-	this.response.setCharacterEncoding(charset);
+	getDelegate(SET_CHARACTER_ENCODING).setCharacterEncoding(charset);
     }
 
     /**
@@ -94,7 +186,7 @@ public class ServletResponseWrapper implements ServletResponse {
      */
 
     public String getCharacterEncoding() {
-	return this.response.getCharacterEncoding();
+	return getDelegate(GET_CHARACTER_ENCODING).getCharacterEncoding();
 	}
     
     
@@ -104,7 +196,7 @@ public class ServletResponseWrapper implements ServletResponse {
      */
 
     public ServletOutputStream getOutputStream() throws IOException {
-	return this.response.getOutputStream();
+	return getDelegate(GET_OUTPUT_STREAM).getOutputStream();
     }  
       
      /**
@@ -114,7 +206,7 @@ public class ServletResponseWrapper implements ServletResponse {
 
 
     public PrintWriter getWriter() throws IOException {
-	return this.response.getWriter();
+	return getDelegate(GET_WRITER).getWriter();
 	}
     
     /**
@@ -123,7 +215,7 @@ public class ServletResponseWrapper implements ServletResponse {
      */
 
     public void setContentLength(int len) {
-	this.response.setContentLength(len);
+	getDelegate(SET_CONTENT_LENGTH).setContentLength(len);
     }
 
     /**
@@ -132,7 +224,7 @@ public class ServletResponseWrapper implements ServletResponse {
      */
 
     public void setContentLengthLong(long len) {
-        this.response.setContentLengthLong(len);
+        getDelegate(SET_CONTENT_LENGTH_LONG).setContentLengthLong(len);
     }
 
     /**
@@ -141,7 +233,7 @@ public class ServletResponseWrapper implements ServletResponse {
      */
 
     public void setContentType(String type) {
-	this.response.setContentType(type);
+	getDelegate(SET_CONTENT_TYPE).setContentType(type);
     }
 
     /**
@@ -152,7 +244,7 @@ public class ServletResponseWrapper implements ServletResponse {
      */
 
     public String getContentType() {
-	return this.response.getContentType();
+	return getDelegate(GET_CONTENT_TYPE).getContentType();
     }
     
     /**
@@ -160,7 +252,7 @@ public class ServletResponseWrapper implements ServletResponse {
      * on the wrapped response object.
      */
     public void setBufferSize(int size) {
-	this.response.setBufferSize(size);
+	getDelegate(SET_BUFFER_SIZE).setBufferSize(size);
     }
     
     /**
@@ -168,7 +260,7 @@ public class ServletResponseWrapper implements ServletResponse {
      * on the wrapped response object.
      */
     public int getBufferSize() {
-	return this.response.getBufferSize();
+	return getDelegate(GET_BUFFER_SIZE).getBufferSize();
     }
 
     /**
@@ -177,7 +269,7 @@ public class ServletResponseWrapper implements ServletResponse {
      */
 
     public void flushBuffer() throws IOException {
-	this.response.flushBuffer();
+	getDelegate(FLUSH_BUFFER).flushBuffer();
     }
     
     /**
@@ -185,7 +277,7 @@ public class ServletResponseWrapper implements ServletResponse {
      * on the wrapped response object.
      */
     public boolean isCommitted() {
-	return this.response.isCommitted();
+	return getDelegate(IS_COMMITTED).isCommitted();
     }
 
     /**
@@ -194,7 +286,7 @@ public class ServletResponseWrapper implements ServletResponse {
      */
 
     public void reset() {
-	this.response.reset();
+	getDelegate(RESET).reset();
     }
     
     /**
@@ -203,7 +295,7 @@ public class ServletResponseWrapper implements ServletResponse {
      */
      
     public void resetBuffer() {
-	this.response.resetBuffer();
+	getDelegate(RESET_BUFFER).resetBuffer();
     }
     
     /**
@@ -212,7 +304,7 @@ public class ServletResponseWrapper implements ServletResponse {
      */
 
     public void setLocale(Locale loc) {
-	this.response.setLocale(loc);
+	getDelegate(SET_LOCALE).setLocale(loc);
     }
     
     /**
@@ -220,7 +312,7 @@ public class ServletResponseWrapper implements ServletResponse {
      * on the wrapped response object.
      */
     public Locale getLocale() {
-	return this.response.getLocale();
+	return getDelegate(GET_LOCALE).getLocale();
     }
 
 
@@ -228,6 +320,10 @@ public class ServletResponseWrapper implements ServletResponse {
      * Checks (recursively) if this ServletResponseWrapper wraps the given
      * {@link ServletResponse} instance.
      *
+     * <p>The chain of wrapped responses is followed in a loop; a wrapper
+     * in the chain is only asked to check the rest of the chain itself
+     * if its class overrides this method.
+     *
      * @param wrapped the ServletResponse instance to search for
      *
      * @return true if this ServletResponseWrapper wraps the
@@ -236,13 +332,18 @@ public class ServletResponseWrapper implements ServletResponse {
      * @since Servlet 3.0
      */
     public boolean isWrapperFor(ServletResponse wrapped) {
-        if (response == wrapped) {
-            return true;
-        } else if (response instanceof ServletResponseWrapper) {
-            return ((ServletResponseWrapper) response).isWrapperFor(wrapped);
-        } else {
-            return false;
+        ServletResponse r = this.response;
+        while (r != wrapped) {
+            if (!(r instanceof ServletResponseWrapper)) {
+                return false;
+            }
+            ServletResponseWrapper w = (ServletResponseWrapper) r;
+            if (w.overrides.overrides(IS_WRAPPER_FOR)) {
+                return w.isWrapperFor(wrapped);
+            }
+            r = w.response;
         }
+        return true;
     }
 
 
@@ -250,6 +351,10 @@ public class ServletResponseWrapper implements ServletResponse {
      * Checks (recursively) if this ServletResponseWrapper wraps a
      * {@link ServletResponse} of the given class type.
      *
+     * <p>The chain of wrapped responses is followed in a loop; a wrapper
+     * in the chain is only asked to check the rest of the chain itself
+     * if its class overrides this method.
+     *
      * @param wrappedType the ServletResponse class type to
      * search for
      *
@@ -267,13 +372,44 @@ public class ServletResponseWrapper implements ServletResponse {
                 wrappedType.getName() + " not a subinterface of " +
                 ServletResponse.class.getName());
         }
-        if (wrappedType.isAssignableFrom(response.getClass())) {
-            return true;
-        } else if (response instanceof ServletResponseWrapper) {
-            return ((ServletResponseWrapper) response).isWrapperFor(wrappedType);
-        } else {
-            return false;
+        ServletResponse r = this.response;
+        while (!wrappedType.isInstance(r)) {
+            if (!(r instanceof ServletResponseWrapper)) {
+                return false;
+            }
+            ServletResponseWrapper w = (ServletResponseWrapper) r;
+            if (w.overrides.overrides(IS_WRAPPER_FOR_TYPE)) {
+                return w.isWrapperFor(wrappedType);
+            }
+            r = w.response;
+        }
+        return true;
+    }
+
+
+    /**
+     * Returns the first response of the given type in the chain of
+     * responses wrapped by this ServletResponseWrapper, starting with the
+     * response it wraps directly.
+     *
+     * @param <T> the type of response to search for
+     *
+     * @param wrappedType the class of the response to search for
+     *
+     * @return the wrapped response, or <code>null</code> if this
+     * ServletResponseWrapper does not wrap a response of that type
+     *
+     * @since Servlet 4.0
+     */
+    public <T extends ServletResponse> T unwrap(Class<T> wrappedType) {
+        ServletResponse r = this.response;
+        while (!wrappedType.isInstance(r)) {
+            if (!(r instanceof ServletResponseWrapper)) {
+                return null;
+            }
+            r = ((ServletResponseWrapper) r).response;
         }
+        return wrappedType.cast(r);
     }
 
 }
@@ -0,0 +1,197 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The delegating methods of a family of wrappers, and the methods each
+ * wrapper class overrides.
+ *
+ * <p>A delegating method is registered with the wrapper class that
+ * implements it by calling through to the wrapped object.  A wrapper
+ * whose class is that class, or a subclass of it that declares no
+ * method with the same name and parameter types, would only pass the
+ * call on, so {@link ServletRequestWrapper} and
+ * {@link ServletResponseWrapper} skip it and call the next object in the
+ * chain directly.  Any other wrapper is called: a wrapper that is not a
+ * subclass of the registering class does not inherit its delegating
+ * implementation, whatever it declares.</p>
+ */
+final class WrapperMethods {
+
+    private final Class<?> root;
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final List<String> keys = new ArrayList<>();
+    private final List<Class<?>> declaringClasses = new ArrayList<>();
+
+    private final ClassValue<Overrides> overrides = new ClassValue<Overrides>() {
+        @Override
+        protected Overrides computeValue(Class<?> type) {
+            return new Overrides(type);
+        }
+    };
+
+    WrapperMethods(Class<?> root) {
+        this.root = root;
+    }
+
+    /*
+     * Registers a delegating method of the given wrapper class, and
+     * returns its index.  Registering a method twice returns the same
+     * index.
+     */
+    synchronized int register(Class<?> declaringClass, String name,
+                              Class<?>... parameterTypes) {
+        if (!root.isAssignableFrom(declaringClass)) {
+            throw new IllegalArgumentException(declaringClass.getName() +
+                " is not a subclass of " + root.getName());
+        }
+        String key = key(name, parameterTypes);
+        Integer index = indexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        int n = keys.size();
+        indexes.put(key, n);
+        keys.add(key);
+        declaringClasses.add(declaringClass);
+        return n;
+    }
+
+    /*
+     * Returns the methods overridden by a wrapper class.
+     */
+    Overrides overrides(Class<?> type) {
+        return overrides.get(type);
+    }
+
+    /*
+     * Returns a bit set, indexed by method, of the methods a wrapper
+     * class can be skipped for.
+     */
+    private synchronized long[] computeSkippable(Class<?> type, int count) {
+        long[] bits = new long[(count + 63) >>> 6];
+        for (int index = 0; index < count; index++) {
+            Class<?> declaringClass = declaringClasses.get(index);
+            if (!declaringClass.isAssignableFrom(type)) {
+                continue;
+            }
+            boolean declared = false;
+            for (Class<?> c = type; c != declaringClass && !declared;
+                    c = c.getSuperclass()) {
+                Method[] methods;
+                try {
+                    methods = c.getDeclaredMethods();
+                } catch (SecurityException e) {
+                    // without reflection, nothing can be skipped
+                    return new long[bits.length];
+                }
+                for (Method m : methods) {
+                    if (!Modifier.isStatic(m.getModifiers())
+                            && keys.get(index).equals(key(m.getName(), m.getParameterTypes()))) {
+                        declared = true;
+                        break;
+                    }
+                }
+            }
+            if (!declared) {
+                bits[index >>> 6] |= 1L << index;
+            }
+        }
+        return bits;
+    }
+
+    private synchronized int count() {
+        return keys.size();
+    }
+
+    private static String key(String name, Class<?>[] parameterTypes) {
+        StringBuilder sb = new StringBuilder(name).append('(');
+        for (Class<?> p : parameterTypes) {
+            sb.append(p.getName()).append(',');
+        }
+        return sb.append(')').toString();
+    }
+
+
+    /*
+     * The methods a wrapper class overrides, worked out again when a
+     * method registered after they were last worked out is asked about.
+     */
+    final class Overrides {
+
+        private final Class<?> type;
+        private long[] skippable = new long[0];
+
+        // the number of methods the bits were worked out for, written
+        // after the bits
+        private volatile int computed;
+
+        Overrides(Class<?> type) {
+            this.type = type;
+        }
+
+        /*
+         * Tests whether a wrapper of this class must be called for a
+         * method, rather than skipped.
+         */
+        boolean overrides(int method) {
+            if (method >= computed) {
+                update();
+            }
+            return (skippable[method >>> 6] & (1L << method)) == 0;
+        }
+
+        private synchronized void update() {
+            int count = count();
+            if (computed < count) {
+                skippable = computeSkippable(type, count);
+                computed = count;
+            }
+        }
+    }
+}
@@ -60,6 +60,13 @@ public interface WriteListener extends EventListener {
      * has been called and has returned a value of <code>false</code> and a write
      * operation has subsequently become possible.
      *
+     * <p>A write operation is any of the <code>write</code> methods of
+     * {@link ServletOutputStream}, including
+     * {@link ServletOutputStream#write(java.nio.ByteBuffer)},
+     * {@link ServletOutputStream#write(java.nio.ByteBuffer[])} and
+     * {@link ServletOutputStream#transferFrom}, each of which counts as
+     * a single write.
+     *
      * @throws IOException if an I/O related error has occurred during processing
      */
     public void onWritePossible() throws IOException;
@@ -0,0 +1,954 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+/**
+ * <p>A filter that compresses responses with the <code>gzip</code> or
+ * <code>deflate</code> content coding, chosen from the
+ * <code>Accept-Encoding</code> header of the request.  The body is
+ * compressed as it is written, whether through the output stream or the
+ * writer of the response, and is never buffered whole.</p>
+ *
+ * <p>The first <code>minSize</code> bytes of a body are held back: a
+ * response that ends before more are written, or whose declared content
+ * length is smaller, is sent uncompressed.  Responses whose content type
+ * is in a set of types that are already compressed, such as images,
+ * archives and video, are never compressed, nor are responses that
+ * already have a <code>Content-Encoding</code>, partial content, and
+ * responses to requests that do not accept either coding.
+ * <code>Vary: Accept-Encoding</code> is added to every response whose
+ * type may be compressed, and a strong <code>ETag</code> of a
+ * compressed response is made weak.</p>
+ *
+ * <p>The filter is configured by these init parameters:</p>
+ * <ul>
+ * <li><code>minSize</code>: the smallest body compressed, in bytes
+ * (default {@value #DEFAULT_MIN_SIZE})</li>
+ * <li><code>compressionLevel</code>: the <code>Deflater</code> level,
+ * from 0 to 9 (default {@link Deflater#DEFAULT_COMPRESSION})</li>
+ * <li><code>excludedMimeTypes</code>: a comma separated list of the
+ * content types not compressed, replacing the default list; a type
+ * ending with <code>/*</code> matches all its subtypes</li>
+ * </ul>
+ *
+ * <p><code>Deflater</code> instances are reused across responses.  The
+ * output stream supports {@link WriteListener}: in non-blocking mode
+ * each write to the compressing stream makes a single write to the
+ * stream of the response.  A response produced asynchronously should
+ * have its output stream or writer closed before the asynchronous
+ * operation is completed, so that the end of the compressed body is
+ * written.</p>
+ *
+ * @since 4.0
+ */
+public class CompressionFilter extends HttpFilter {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String LSTRING_FILE =
+        "javax.servlet.http.LocalStrings";
+    private static final ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+
+    /** The smallest body compressed unless configured otherwise. */
+    public static final int DEFAULT_MIN_SIZE = 1024;
+
+    private static final String[] DEFAULT_EXCLUDED_MIME_TYPES = {
+        "image/png", "image/jpeg", "image/gif", "image/webp", "image/avif",
+        "video/*", "audio/*", "font/woff", "font/woff2",
+        "application/zip", "application/gzip", "application/x-gzip",
+        "application/x-bzip2", "application/x-xz", "application/zstd",
+        "application/x-7z-compressed", "application/x-rar-compressed",
+        "application/pdf", "application/octet-stream",
+        "text/event-stream"
+    };
+
+    private static final int MAX_POOLED_DEFLATERS = 64;
+
+    private int minSize = DEFAULT_MIN_SIZE;
+    private int level = Deflater.DEFAULT_COMPRESSION;
+
+    // excluded types, and the prefixes "type/" of excluded "type/*"
+    private Set<String> excludedTypes;
+    private String[] excludedPrefixes;
+
+    private final transient ConcurrentLinkedQueue<Deflater> gzipDeflaters =
+        new ConcurrentLinkedQueue<>();
+    private final transient ConcurrentLinkedQueue<Deflater> zlibDeflaters =
+        new ConcurrentLinkedQueue<>();
+    private final transient AtomicInteger pooledDeflaters = new AtomicInteger();
+
+    /**
+     * Constructs a compression filter.
+     */
+    public CompressionFilter() {
+        setExcludedTypes(DEFAULT_EXCLUDED_MIME_TYPES);
+    }
+
+    /**
+     * Reads the init parameters of the filter.
+     *
+     * @throws ServletException if an init parameter is not valid
+     */
+    @Override
+    public void init() throws ServletException {
+        minSize = getIntParameter("minSize", DEFAULT_MIN_SIZE, 0);
+        level = getIntParameter("compressionLevel",
+                                Deflater.DEFAULT_COMPRESSION, -1);
+        if (level > 9) {
+            throw invalidParameter("compressionLevel", String.valueOf(level));
+        }
+        String types = getInitParameter("excludedMimeTypes");
+        setExcludedTypes((types == null)
+            ? DEFAULT_EXCLUDED_MIME_TYPES : types.split(","));
+    }
+
+    /**
+     * Ends the pooled <code>Deflater</code> instances.
+     */
+    @Override
+    public void destroy() {
+        endAll(gzipDeflaters);
+        endAll(zlibDeflaters);
+    }
+
+    /**
+     * Passes the request on with a response that compresses its body if
+     * the client accepts it.
+     *
+     * @param req the request
+     * @param res the response
+     * @param chain the filter chain
+     *
+     * @throws IOException if an input or output error occurs
+     * @throws ServletException if the request cannot be processed
+     */
+    @Override
+    protected void doFilter(HttpServletRequest req, HttpServletResponse res,
+                            FilterChain chain)
+            throws IOException, ServletException {
+        String coding = negotiate(req.getHeader("Accept-Encoding"));
+        final CompressingResponse compressing =
+            new CompressingResponse(res, this, coding);
+        chain.doFilter(req, compressing);
+        if (req.isAsyncStarted()) {
+            req.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) throws IOException {
+                    try {
+                        compressing.finish();
+                    } finally {
+                        compressing.release();
+                    }
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) { }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                    compressing.release();
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) { }
+            });
+        } else {
+            try {
+                compressing.finish();
+            } finally {
+                compressing.release();
+            }
+        }
+    }
+
+    /*
+     * Returns "gzip" or "deflate", whichever the header accepts with the
+     * higher quality, preferring gzip, or null if it accepts neither.
+     */
+    // file private
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        int gzip = -1;
+        int deflate = -1;
+        int any = -1;
+        int len = acceptEncoding.length();
+        int pos = 0;
+        while (pos < len) {
+            int end = acceptEncoding.indexOf(',', pos);
+            if (end < 0) {
+                end = len;
+            }
+            int semi = acceptEncoding.indexOf(';', pos);
+            int nameEnd = (semi >= 0 && semi < end) ? semi : end;
+            int start = pos;
+            while (start < nameEnd && acceptEncoding.charAt(start) <= ' ') {
+                start++;
+            }
+            while (nameEnd > start && acceptEncoding.charAt(nameEnd - 1) <= ' ') {
+                nameEnd--;
+            }
+            int q = (semi >= 0 && semi < end)
+                ? quality(acceptEncoding, semi + 1, end) : 1000;
+            int n = nameEnd - start;
+            if (matches(acceptEncoding, start, n, "gzip")
+                    || matches(acceptEncoding, start, n, "x-gzip")) {
+                gzip = Math.max(gzip, q);
+            } else if (matches(acceptEncoding, start, n, "deflate")) {
+                deflate = Math.max(deflate, q);
+            } else if (n == 1 && acceptEncoding.charAt(start) == '*') {
+                any = q;
+            }
+            pos = end + 1;
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return "gzip";
+        }
+        return (deflate > 0) ? "deflate" : null;
+    }
+
+    private static boolean matches(String s, int start, int len, String name) {
+        return len == name.length() && s.regionMatches(true, start, name, 0, len);
+    }
+
+    /*
+     * Parses the parameters of a coding for "q", returning the quality
+     * in thousandths.
+     */
+    private static int quality(String s, int start, int end) {
+        int q = s.indexOf("q=", start);
+        if (q < 0 || q >= end) {
+            q = s.indexOf("Q=", start);
+            if (q < 0 || q >= end) {
+                return 1000;
+            }
+        }
+        int value = 0;
+        int digits = 0;
+        boolean fraction = false;
+        for (int i = q + 2; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '.') {
+                fraction = true;
+            } else if (c >= '0' && c <= '9') {
+                if (!fraction) {
+                    value = (c - '0') * 1000;
+                } else if (digits < 3) {
+                    value += (c - '0') * (digits == 0 ? 100 : digits == 1 ? 10 : 1);
+                    digits++;
+                }
+            } else if (c > ' ') {
+                break;
+            }
+        }
+        return Math.min(value, 1000);
+    }
+
+    // file private
+    int getMinSize() {
+        return minSize;
+    }
+
+    /*
+     * Tests whether a response with the given content type may be
+     * compressed.  A response without a content type is not.
+     */
+    // file private
+    boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int end = contentType.indexOf(';');
+        if (end < 0) {
+            end = contentType.length();
+        }
+        while (end > 0 && contentType.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        for (String prefix : excludedPrefixes) {
+            if (contentType.regionMatches(true, 0, prefix, 0, prefix.length())) {
+                return false;
+            }
+        }
+        String type = contentType.substring(0, end);
+        if (excludedTypes.contains(type)) {
+            return false;
+        }
+        return !excludedTypes.contains(type.toLowerCase(Locale.ENGLISH));
+    }
+
+    // file private
+    Deflater takeDeflater(boolean gzip) {
+        Deflater deflater = (gzip ? gzipDeflaters : zlibDeflaters).poll();
+        if (deflater == null) {
+            return new Deflater(level, gzip);
+        }
+        pooledDeflaters.decrementAndGet();
+        return deflater;
+    }
+
+    // file private
+    void releaseDeflater(Deflater deflater, boolean gzip) {
+        deflater.reset();
+        if (pooledDeflaters.incrementAndGet() <= MAX_POOLED_DEFLATERS) {
+            (gzip ? gzipDeflaters : zlibDeflaters).offer(deflater);
+        } else {
+            pooledDeflaters.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    private void setExcludedTypes(String[] types) {
+        Set<String> exact = new HashSet<>();
+        Set<String> prefixes = new HashSet<>();
+        for (String t : types) {
+            t = t.trim().toLowerCase(Locale.ENGLISH);
+            if (t.endsWith("/*")) {
+                prefixes.add(t.substring(0, t.length() - 1));
+            } else if (t.length() > 0) {
+                exact.add(t);
+            }
+        }
+        excludedTypes = exact;
+        excludedPrefixes = prefixes.toArray(new String[prefixes.size()]);
+    }
+
+    private int getIntParameter(String name, int defaultValue, int min)
+            throws ServletException {
+        String value = getInitParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int i = Integer.parseInt(value.trim());
+            if (i >= min) {
+                return i;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw invalidParameter(name, value);
+    }
+
+    private static ServletException invalidParameter(String name, String value) {
+        String msg = lStrings.getString("err.filter.invalidInitParameter");
+        return new ServletException(MessageFormat.format(msg, name, value));
+    }
+
+    private static void endAll(ConcurrentLinkedQueue<Deflater> pool) {
+        Deflater deflater;
+        while ((deflater = pool.poll()) != null) {
+            deflater.end();
+        }
+    }
+}
+
+
+/*
+ * A response whose body is compressed if it turns out to be large
+ * enough and of a compressible type.  Content-Length headers are held
+ * back until it is known whether the body is compressed.
+ */
+// file private
+class CompressingResponse extends HttpServletResponseWrapper {
+
+    private static final ResourceBundle lStrings
+        = ResourceBundle.getBundle("javax.servlet.http.LocalStrings");
+
+    private final CompressionFilter filter;
+    private final String coding;
+
+    private CompressingOutputStream stream;
+    private PrintWriter writer;
+    private boolean usingOutputStream;
+    private long contentLength = -1;
+    private boolean released;
+
+    // file private
+    CompressingResponse(HttpServletResponse r, CompressionFilter filter,
+                        String coding) {
+        super(r);
+        this.filter = filter;
+        this.coding = coding;
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        setContentLengthLong(len);
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        if (stream != null && stream.isIdentity()) {
+            super.setContentLengthLong(len);
+        } else if (stream == null || !stream.isCompressing()) {
+            contentLength = len;
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (isContentLength(name)) {
+            setContentLengthLong((value == null) ? -1 : parseLength(value));
+        } else {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (isContentLength(name)) {
+            setContentLengthLong(parseLength(value));
+        } else {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        if (isContentLength(name)) {
+            setContentLengthLong(value);
+        } else {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        if (isContentLength(name)) {
+            setContentLengthLong(value);
+        } else {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException(
+                lStrings.getString("err.ise.getOutputStream"));
+        }
+        usingOutputStream = true;
+        return stream();
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (usingOutputStream) {
+            throw new IllegalStateException(
+                lStrings.getString("err.ise.getWriter"));
+        }
+        if (writer == null) {
+            OutputStreamWriter w = new OutputStreamWriter(
+                stream(), getCharacterEncoding());
+            writer = new PrintWriter(w);
+        }
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        } else if (stream != null) {
+            stream.flush();
+        } else {
+            super.flushBuffer();
+        }
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        contentLength = -1;
+        if (stream != null) {
+            stream.restart(false);
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        if (stream != null) {
+            stream.restart(true);
+        }
+    }
+
+    /*
+     * Writes whatever has been held back and the end of a compressed
+     * body, once the request has been processed.
+     */
+    // file private
+    void finish() throws IOException {
+        if (released) {
+            return;
+        }
+        if (stream == null) {
+            // no body was written
+            if (contentLength >= 0) {
+                super.setContentLengthLong(contentLength);
+            }
+            if (filter.isCompressible(getContentType())) {
+                addVary();
+            }
+            return;
+        }
+        stream.setFinishing();
+        if (writer != null) {
+            writer.flush();
+        }
+        stream.finish();
+    }
+
+    /*
+     * Returns the deflater to the pool once the request is over, after
+     * which nothing more is written.
+     */
+    // file private
+    void release() {
+        released = true;
+        if (stream != null) {
+            stream.release();
+        }
+    }
+
+    // file private
+    long getHeldContentLength() {
+        return contentLength;
+    }
+
+    /*
+     * Decides whether a body larger than the minimum size is compressed,
+     * sets the headers accordingly, and returns the coding to use or null.
+     */
+    // file private
+    String startBody(boolean large) {
+        String type = getContentType();
+        boolean compressible = filter.isCompressible(type)
+            && getHeader("Content-Encoding") == null
+            && getHeader("Content-Range") == null;
+        int status = getStatus();
+        if (status == SC_NO_CONTENT || status == SC_PARTIAL_CONTENT
+                || status == SC_NOT_MODIFIED) {
+            compressible = false;
+        }
+        if (compressible) {
+            addVary();
+        }
+        if (large && compressible && coding != null && !isCommitted()) {
+            super.setHeader("Content-Encoding", coding);
+            String etag = getHeader("ETag");
+            if (etag != null && etag.startsWith("\"")) {
+                super.setHeader("ETag", "W/" + etag);
+            }
+            return coding;
+        }
+        if (contentLength >= 0) {
+            super.setContentLengthLong(contentLength);
+        }
+        return null;
+    }
+
+    private void addVary() {
+        String vary = getHeader("Vary");
+        if (vary == null) {
+            super.addHeader("Vary", "Accept-Encoding");
+        } else if (!vary.equals("*")
+                && !vary.toLowerCase(Locale.ENGLISH).contains("accept-encoding")) {
+            super.setHeader("Vary", vary + ", Accept-Encoding");
+        }
+    }
+
+    private CompressingOutputStream stream() throws IOException {
+        if (stream == null) {
+            stream = new CompressingOutputStream(this, super.getOutputStream(),
+                filter);
+            if (released) {
+                stream.release();
+            }
+        }
+        return stream;
+    }
+
+    private static boolean isContentLength(String name) {
+        return "content-length".equalsIgnoreCase(name);
+    }
+
+    private static long parseLength(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
+
+
+/*
+ * Holds back the start of a body, then writes it either unchanged or
+ * compressed.  Each write makes at most one write to the stream of the
+ * response while it is in non-blocking mode.
+ */
+// file private
+class CompressingOutputStream extends ServletOutputStream {
+
+    private static final ResourceBundle lStrings
+        = ResourceBundle.getBundle("javax.servlet.http.LocalStrings");
+
+    private static final int UNDECIDED = 0;
+    private static final int IDENTITY = 1;
+    private static final int COMPRESSING = 2;
+    private static final int FINISHED = 3;
+
+    private static final byte[] GZIP_HEADER = {
+        0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+    // bytes collected before writing them in blocking mode
+    private static final int MAX_PENDING = 32 * 1024;
+
+    private final CompressingResponse response;
+    private final ServletOutputStream out;
+    private final CompressionFilter filter;
+
+    private int state = UNDECIDED;
+    private boolean nonBlocking;
+    private boolean finishing;
+
+    // the start of the body, while undecided
+    private byte[] held;
+    private int heldCount;
+
+    private Deflater deflater;
+    private boolean gzip;
+    private boolean headerWritten;
+    private final CRC32 crc = new CRC32();
+    private final byte[] single = new byte[1];
+
+    // output collected for the next write to out
+    private byte[] pending = new byte[8192];
+    private int pendingCount;
+
+    // file private
+    CompressingOutputStream(CompressingResponse response,
+                            ServletOutputStream out,
+                            CompressionFilter filter) {
+        this.response = response;
+        this.out = out;
+        this.filter = filter;
+    }
+
+    // file private
+    boolean isIdentity() {
+        return state == IDENTITY;
+    }
+
+    // file private
+    boolean isCompressing() {
+        return state == COMPRESSING;
+    }
+
+    // file private
+    void setFinishing() {
+        finishing = true;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        switch (state) {
+        case UNDECIDED:
+            long declared = response.getHeldContentLength();
+            if (declared >= 0 && declared < filter.getMinSize()) {
+                decide(false);
+                write(b, off, len);
+                return;
+            }
+            if (heldCount + len <= filter.getMinSize()) {
+                if (held == null) {
+                    held = new byte[filter.getMinSize()];
+                }
+                System.arraycopy(b, off, held, heldCount, len);
+                heldCount += len;
+                return;
+            }
+            decide(true);
+            write(b, off, len);
+            return;
+        case IDENTITY:
+            if (pendingCount > 0) {
+                // the held bytes go out with these in a single write
+                append(b, off, len);
+                writePending();
+            } else {
+                out.write(b, off, len);
+            }
+            return;
+        case COMPRESSING:
+            deflate(b, off, len, Deflater.NO_FLUSH, false);
+            writePending();
+            return;
+        default:
+            throw new IOException(lStrings.getString("err.io.streamClosed"));
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (finishing) {
+            // a writer is being flushed before finish()
+            return;
+        }
+        if (state == UNDECIDED) {
+            // the headers are sent now, and whatever follows is streamed
+            decide(true);
+        }
+        if (state == COMPRESSING) {
+            deflate(null, 0, 0, Deflater.SYNC_FLUSH, false);
+        }
+        if (state != FINISHED) {
+            writePending();
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (state != FINISHED) {
+            finish();
+            out.close();
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+        return out.isReady();
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+        out.setWriteListener(writeListener);
+        nonBlocking = true;
+    }
+
+    // file private
+    void finish() throws IOException {
+        if (state == UNDECIDED) {
+            if (response.getHeldContentLength() < 0 && !response.isCommitted()) {
+                response.setContentLength(heldCount);
+            }
+            decide(false);
+        }
+        if (state == COMPRESSING) {
+            deflater.finish();
+            deflate(null, 0, 0, Deflater.NO_FLUSH, true);
+            if (gzip) {
+                writeInt((int) crc.getValue());
+                writeInt(deflater.getTotalIn());
+            }
+            releaseDeflater();
+        }
+        if (state != FINISHED) {
+            writePending();
+            state = FINISHED;
+        }
+    }
+
+    /*
+     * Returns the deflater to the pool and closes the stream without
+     * writing anything more, so that later writes fail.
+     */
+    // file private
+    void release() {
+        releaseDeflater();
+        state = FINISHED;
+        heldCount = 0;
+        pendingCount = 0;
+    }
+
+    /*
+     * Discards the body written so far, after the response buffer has been
+     * reset.  A full reset also clears the headers, so the body is
+     * decided on again.
+     */
+    // file private
+    void restart(boolean keepCoding) {
+        heldCount = 0;
+        pendingCount = 0;
+        if (state == COMPRESSING) {
+            if (keepCoding) {
+                deflater.reset();
+                crc.reset();
+                headerWritten = false;
+                return;
+            }
+            releaseDeflater();
+        }
+        if (state != FINISHED) {
+            state = UNDECIDED;
+        }
+    }
+
+    /*
+     * Decides whether the body is compressed.  The held bytes are moved
+     * to pending, compressed or not, to be written with the next write.
+     */
+    private void decide(boolean large) throws IOException {
+        String coding = response.startBody(large);
+        if (coding == null) {
+            state = IDENTITY;
+            if (heldCount > 0) {
+                append(held, 0, heldCount);
+            }
+        } else {
+            state = COMPRESSING;
+            gzip = coding.equals("gzip");
+            deflater = filter.takeDeflater(gzip);
+            crc.reset();
+            headerWritten = false;
+            deflate(held, 0, heldCount, Deflater.NO_FLUSH, false);
+        }
+        heldCount = 0;
+    }
+
+    /*
+     * Compresses bytes into pending.  Unless end is true, this stops once
+     * the deflater needs more input, or for a flush, once all output has
+     * been produced; at the end it stops once the deflater is finished.
+     */
+    private void deflate(byte[] b, int off, int len, int flush, boolean end)
+            throws IOException {
+        if (!headerWritten) {
+            if (gzip) {
+                append(GZIP_HEADER, 0, GZIP_HEADER.length);
+            }
+            headerWritten = true;
+        }
+        if (len > 0) {
+            deflater.setInput(b, off, len);
+            if (gzip) {
+                crc.update(b, off, len);
+            }
+        }
+        while (true) {
+            if (pending.length - pendingCount < 1024) {
+                if (!nonBlocking && pendingCount >= MAX_PENDING) {
+                    writePending();
+                } else {
+                    pending = Arrays.copyOf(pending, pending.length * 2);
+                }
+            }
+            int space = pending.length - pendingCount;
+            int n = deflater.deflate(pending, pendingCount, space, flush);
+            pendingCount += n;
+            if (end ? deflater.finished()
+                    : n < space && (flush != Deflater.NO_FLUSH
+                                    || deflater.needsInput())) {
+                break;
+            }
+        }
+    }
+
+    private void releaseDeflater() {
+        if (deflater != null) {
+            filter.releaseDeflater(deflater, gzip);
+            deflater = null;
+        }
+    }
+
+    private void append(byte[] b, int off, int len) {
+        if (pending.length - pendingCount < len) {
+            pending = Arrays.copyOf(pending,
+                Math.max(pending.length * 2, pendingCount + len));
+        }
+        System.arraycopy(b, off, pending, pendingCount, len);
+        pendingCount += len;
+    }
+
+    private void writeInt(int i) {
+        byte[] b = { (byte) i, (byte) (i >> 8), (byte) (i >> 16), (byte) (i >> 24) };
+        append(b, 0, 4);
+    }
+
+    private void writePending() throws IOException {
+        if (pendingCount > 0) {
+            out.write(pending, 0, pendingCount);
+            pendingCount = 0;
+        }
+    }
+}
@@ -70,12 +70,31 @@ public class Cookie implements Cloneable, Serializable {
     private static ResourceBundle lStrings =
         ResourceBundle.getBundle(LSTRING_FILE);
 
+    // bit c of TOKEN_LOW (c < 64) or of TOKEN_HIGH (64 <= c < 128) is
+    // set if the character c may occur in a cookie name
+    private static final long TOKEN_LOW;
+    private static final long TOKEN_HIGH;
+
     static {
         if (Boolean.valueOf(System.getProperty("org.glassfish.web.rfc2109_cookie_names_enforced", "true"))) {
             TSPECIALS = "/()<>@,;:\\\"[]?={} \t";
         } else {
             TSPECIALS = ",; ";
         }
+
+        long low = 0;
+        long high = 0;
+        for (char c = 0x20; c < 0x7f; c++) {
+            if (TSPECIALS.indexOf(c) == -1) {
+                if (c < 64) {
+                    low |= 1L << c;
+                } else {
+                    high |= 1L << (c - 64);
+                }
+            }
+        }
+        TOKEN_LOW = low;
+        TOKEN_HIGH = high;
     }
     
     //
@@ -130,26 +149,7 @@ public class Cookie implements Cloneable, Serializable {
      * @see #setVersion
      */
     public Cookie(String name, String value) {
-        if (name == null || name.length() == 0) {
-            throw new IllegalArgumentException(
-                    lStrings.getString("err.cookie_name_blank"));
-        }
-        if (!isToken(name) ||
-                name.equalsIgnoreCase("Comment") || // rfc2019
-                name.equalsIgnoreCase("Discard") || // 2019++
-                name.equalsIgnoreCase("Domain") ||
-                name.equalsIgnoreCase("Expires") || // (old cookies)
-                name.equalsIgnoreCase("Max-Age") || // rfc2019
-                name.equalsIgnoreCase("Path") ||
-                name.equalsIgnoreCase("Secure") ||
-                name.equalsIgnoreCase("Version") ||
-                name.startsWith("$")) {
-            String errMsg = lStrings.getString("err.cookie_name_is_token");
-            Object[] errArgs = new Object[1];
-            errArgs[0] = name;
-            errMsg = MessageFormat.format(errMsg, errArgs);
-            throw new IllegalArgumentException(errMsg);
-        }
+        checkName(name);
 
         this.name = name;
         this.value = value;
@@ -397,6 +397,33 @@ public class Cookie implements Cloneable, Serializable {
         version = v;
     }
 
+    /*
+     * Throws IllegalArgumentException unless name may be used as the
+     * name of a cookie.
+     */
+    static void checkName(String name) {
+        if (name == null || name.length() == 0) {
+            throw new IllegalArgumentException(
+                    lStrings.getString("err.cookie_name_blank"));
+        }
+        if (!isToken(name) || isReserved(name)) {
+            String errMsg = lStrings.getString("err.cookie_name_is_token");
+            Object[] errArgs = new Object[1];
+            errArgs[0] = name;
+            errMsg = MessageFormat.format(errMsg, errArgs);
+            throw new IllegalArgumentException(errMsg);
+        }
+    }
+
+    /*
+     * Returns true if name may be used as the name of a cookie, that is
+     * if checkName does not throw.
+     */
+    static boolean isValidName(String name) {
+        return name != null && name.length() > 0
+            && isToken(name) && !isReserved(name);
+    }
+
     /*
      * Tests a string and returns true if the string counts as a 
      * reserved token in the Java language.
@@ -406,11 +433,15 @@ public class Cookie implements Cloneable, Serializable {
      * @return <code>true</code> if the <code>String</code> is a reserved
      * token; <code>false</code> otherwise
      */
-    private boolean isToken(String value) {
+    private static boolean isToken(String value) {
         int len = value.length();
         for (int i = 0; i < len; i++) {
             char c = value.charAt(i);
-            if (c < 0x20 || c >= 0x7f || TSPECIALS.indexOf(c) != -1) {
+            if (c < 64) {
+                if ((TOKEN_LOW & (1L << c)) == 0) {
+                    return false;
+                }
+            } else if (c >= 128 || (TOKEN_HIGH & (1L << (c - 64))) == 0) {
                 return false;
             }
         }
@@ -418,6 +449,50 @@ public class Cookie implements Cloneable, Serializable {
         return true;
     }
 
+    /*
+     * Tests whether a name, which is known to be a non-empty token,
+     * starts with "$" or is one of the attribute names of RFC 2109
+     * cookies ignoring case.  Only the names with the same length and
+     * first letter as the name are compared.
+     */
+    private static boolean isReserved(String name) {
+        char first = name.charAt(0);
+        if (first == '$') {
+            return true;
+        }
+        // ASCII letters differ from their upper case by 0x20 only
+        switch (name.length()) {
+        case 4:
+            return name.equalsIgnoreCase("Path");
+        case 6:
+            switch (first | 0x20) {
+            case 'd':
+                return name.equalsIgnoreCase("Domain");
+            case 's':
+                return name.equalsIgnoreCase("Secure");
+            default:
+                return false;
+            }
+        case 7:
+            switch (first | 0x20) {
+            case 'c':
+                return name.equalsIgnoreCase("Comment"); // rfc2019
+            case 'd':
+                return name.equalsIgnoreCase("Discard"); // 2019++
+            case 'e':
+                return name.equalsIgnoreCase("Expires"); // (old cookies)
+            case 'm':
+                return name.equalsIgnoreCase("Max-Age"); // rfc2019
+            case 'v':
+                return name.equalsIgnoreCase("Version");
+            default:
+                return false;
+            }
+        default:
+            return false;
+        }
+    }
+
     /**
      * Overrides the standard <code>java.lang.Object.clone</code> 
      * method to return a copy of this Cookie.
@@ -0,0 +1,316 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.util.Arrays;
+import java.util.Enumeration;
+
+/**
+ * <p>The cookies of a request, parsed from its <code>Cookie</code>
+ * headers as described by RFC 6265.  Parsing only records the offsets
+ * of each name and value in the header; {@link #getCookieValue} finds
+ * a cookie by comparing names with the header itself, and {@link Cookie}
+ * objects are created only by {@link #getCookie} and {@link #getCookies}.</p>
+ *
+ * <p>Cookie pairs are separated by <code>;</code>, and whitespace around
+ * names and values is ignored.  A pair without <code>=</code> or with an
+ * empty name is ignored, as are pairs whose name starts with
+ * <code>$</code>, which are the attributes of RFC 2109 cookies.  Values
+ * are returned as they were sent, including any double quotes around
+ * them.  Names are case sensitive.</p>
+ *
+ * <p>Instances are not safe for use by multiple threads.</p>
+ *
+ * @see HttpServletRequest#getCookie
+ * @see HttpServletRequest#getCookieValue
+ *
+ * @since 4.0
+ */
+public final class CookieHeader {
+
+    // ints recorded per cookie in offsets
+    private static final int NAME_START = 0;
+    private static final int NAME_END = 1;
+    private static final int VALUE_START = 2;
+    private static final int VALUE_END = 3;
+    private static final int FIELDS = 4;
+
+    private final String header;
+    private final int[] offsets;
+    private final int count;
+
+    private Cookie[] cookies;
+
+    /**
+     * Parses the value of a <code>Cookie</code> header.
+     *
+     * @param header the header value
+     *
+     * @throws NullPointerException if <code>header</code> is null
+     */
+    public CookieHeader(String header) {
+        this.header = header;
+
+        int len = header.length();
+        int[] o = new int[FIELDS * 8];
+        int n = 0;
+        int pos = 0;
+        while (pos < len) {
+            int end = header.indexOf(';', pos);
+            if (end < 0) {
+                end = len;
+            }
+            int eq = header.indexOf('=', pos);
+            if (eq >= 0 && eq < end) {
+                int nameStart = skipWhitespace(pos, eq);
+                int nameEnd = trimWhitespace(nameStart, eq);
+                if (nameEnd > nameStart && header.charAt(nameStart) != '$') {
+                    if (o.length == n * FIELDS) {
+                        o = Arrays.copyOf(o, o.length * 2);
+                    }
+                    int valueStart = skipWhitespace(eq + 1, end);
+                    int base = n * FIELDS;
+                    o[base + NAME_START] = nameStart;
+                    o[base + NAME_END] = nameEnd;
+                    o[base + VALUE_START] = valueStart;
+                    o[base + VALUE_END] = trimWhitespace(valueStart, end);
+                    n++;
+                }
+            }
+            pos = end + 1;
+        }
+        this.offsets = o;
+        this.count = n;
+    }
+
+    /**
+     * Parses the <code>Cookie</code> headers of a request.  Several
+     * headers, as sent by HTTP/2 clients, are parsed as if they were
+     * joined with <code>"; "</code>.
+     *
+     * @param req the request
+     *
+     * @return the parsed cookies, which are empty if the request has
+     * no <code>Cookie</code> header
+     */
+    public static CookieHeader of(HttpServletRequest req) {
+        Enumeration<String> headers = req.getHeaders("Cookie");
+        if (headers == null || !headers.hasMoreElements()) {
+            return new CookieHeader("");
+        }
+        String first = headers.nextElement();
+        if (!headers.hasMoreElements()) {
+            return new CookieHeader(first);
+        }
+        StringBuilder sb = new StringBuilder(first);
+        do {
+            sb.append("; ").append(headers.nextElement());
+        } while (headers.hasMoreElements());
+        return new CookieHeader(sb.toString());
+    }
+
+    /**
+     * Gets the number of cookies, counting repeated names once per
+     * occurrence.
+     *
+     * @return the number of cookies
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Gets the name of a cookie.
+     *
+     * @param index the index of the cookie, in the order of the header
+     *
+     * @return the name
+     *
+     * @throws IndexOutOfBoundsException if <code>index</code> is negative
+     * or not less than {@link #size}
+     */
+    public String getName(int index) {
+        checkIndex(index);
+        int base = index * FIELDS;
+        return header.substring(offsets[base + NAME_START], offsets[base + NAME_END]);
+    }
+
+    /**
+     * Gets the value of a cookie.
+     *
+     * @param index the index of the cookie, in the order of the header
+     *
+     * @return the value
+     *
+     * @throws IndexOutOfBoundsException if <code>index</code> is negative
+     * or not less than {@link #size}
+     */
+    public String getValue(int index) {
+        checkIndex(index);
+        int base = index * FIELDS;
+        return header.substring(offsets[base + VALUE_START], offsets[base + VALUE_END]);
+    }
+
+    /**
+     * Gets the value of the first cookie with the given name that is
+     * accepted by the {@link Cookie} constructor, without creating a
+     * {@link Cookie}, so that it is the value of {@link #getCookie}.
+     *
+     * @param name the name of the cookie
+     *
+     * @return the value, or <code>null</code> if no valid cookie has
+     * that name
+     */
+    public String getCookieValue(String name) {
+        // the cookies found have that very name
+        if (!Cookie.isValidName(name)) {
+            return null;
+        }
+        int i = indexOf(name, 0);
+        return (i < 0) ? null : getValue(i);
+    }
+
+    /**
+     * Gets the first cookie with the given name that is accepted by the
+     * {@link Cookie} constructor.  Only that cookie is created.
+     *
+     * @param name the name of the cookie
+     *
+     * @return the cookie, or <code>null</code> if no valid cookie has
+     * that name
+     */
+    public Cookie getCookie(String name) {
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (cookie.getName().equals(name)) {
+                    return cookie;
+                }
+            }
+            return null;
+        }
+        for (int i = indexOf(name, 0); i >= 0; i = indexOf(name, i + 1)) {
+            Cookie cookie = toCookie(i);
+            if (cookie != null) {
+                return cookie;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets all the cookies accepted by the {@link Cookie} constructor, in
+     * the form returned by {@link HttpServletRequest#getCookies}.  The
+     * cookies are created the first time this method is called.
+     *
+     * @return the cookies, or <code>null</code> if there are none
+     */
+    public Cookie[] getCookies() {
+        if (cookies == null) {
+            Cookie[] result = new Cookie[count];
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                Cookie cookie = toCookie(i);
+                if (cookie != null) {
+                    result[n++] = cookie;
+                }
+            }
+            cookies = (n == count) ? result : Arrays.copyOf(result, n);
+        }
+        return (cookies.length == 0) ? null : cookies;
+    }
+
+    /**
+     * Returns the header that was parsed.
+     *
+     * @return the header
+     */
+    @Override
+    public String toString() {
+        return header;
+    }
+
+    private int indexOf(String name, int from) {
+        int len = name.length();
+        for (int i = from; i < count; i++) {
+            int base = i * FIELDS;
+            int start = offsets[base + NAME_START];
+            if (offsets[base + NAME_END] - start == len
+                    && header.regionMatches(start, name, 0, len)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Cookie toCookie(int index) {
+        try {
+            return new Cookie(getName(index), getValue(index));
+        } catch (IllegalArgumentException e) {
+            // names that are not tokens or are reserved are dropped,
+            // as containers do when building getCookies()
+            return null;
+        }
+    }
+
+    private int skipWhitespace(int start, int end) {
+        while (start < end && isWhitespace(header.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private int trimWhitespace(int start, int end) {
+        while (end > start && isWhitespace(header.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+    }
+}
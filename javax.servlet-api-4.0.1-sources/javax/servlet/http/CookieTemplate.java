@@ -0,0 +1,367 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.text.MessageFormat;
+import java.util.ResourceBundle;
+import javax.servlet.SessionCookieConfig;
+
+/**
+ * <p>An immutable description of a cookie without its value, which
+ * serializes <code>Set-Cookie</code> header values.  The attributes of
+ * the cookie are serialized once, when the template is created, so
+ * that writing a header only appends the name, the value and the cached
+ * attributes.</p>
+ *
+ * <p>Headers follow RFC 6265: the attributes written are
+ * <code>Max-Age</code>, <code>Domain</code>, <code>Path</code>,
+ * <code>Secure</code> and <code>HttpOnly</code>.  A cookie with a
+ * maximum age of zero also gets an <code>Expires</code> date in the past
+ * for older clients.  The comment and version of a cookie are not part
+ * of RFC 6265 and are not written.</p>
+ *
+ * @see Cookie
+ * @see SessionCookieConfig
+ *
+ * @since 4.0
+ */
+public final class CookieTemplate {
+
+    private static final String LSTRING_FILE =
+        "javax.servlet.http.LocalStrings";
+    private static final ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+
+    private static final String EXPIRED =
+        "; Expires=Thu, 01 Jan 1970 00:00:00 GMT";
+
+    // bit c of OCTET_LOW (c < 64) or of OCTET_HIGH (64 <= c < 128) is set
+    // if the character c is a cookie-octet of RFC 6265
+    private static final long OCTET_LOW;
+    private static final long OCTET_HIGH;
+
+    static {
+        long low = 0;
+        long high = 0;
+        for (char c = 0x21; c < 0x7f; c++) {
+            if (c != '"' && c != ',' && c != ';' && c != '\\') {
+                if (c < 64) {
+                    low |= 1L << c;
+                } else {
+                    high |= 1L << (c - 64);
+                }
+            }
+        }
+        OCTET_LOW = low;
+        OCTET_HIGH = high;
+    }
+
+    private final String name;
+    private final String prefix;
+    private final String attributes;
+    private final String domain;
+    private final String path;
+    private final int maxAge;
+    private final boolean secure;
+    private final boolean httpOnly;
+
+    private CookieTemplate(String name, String domain, String path,
+                           int maxAge, boolean secure, boolean httpOnly) {
+        Cookie.checkName(name);
+        this.name = name;
+        this.prefix = name + '=';
+        this.domain = domain;
+        this.path = path;
+        this.maxAge = maxAge;
+        this.secure = secure;
+        this.httpOnly = httpOnly;
+
+        StringBuilder sb = new StringBuilder(64);
+        if (maxAge >= 0) {
+            sb.append("; Max-Age=").append(maxAge);
+            if (maxAge == 0) {
+                sb.append(EXPIRED);
+            }
+        }
+        if (domain != null && domain.length() > 0) {
+            checkAttribute(domain);
+            sb.append("; Domain=").append(domain);
+        }
+        if (path != null && path.length() > 0) {
+            checkAttribute(path);
+            sb.append("; Path=").append(path);
+        }
+        if (secure) {
+            sb.append("; Secure");
+        }
+        if (httpOnly) {
+            sb.append("; HttpOnly");
+        }
+        this.attributes = sb.toString();
+    }
+
+    /**
+     * Creates a template with the name and attributes of a cookie.
+     * Later changes to the cookie do not affect the template.
+     *
+     * @param cookie the cookie
+     *
+     * @return the template
+     *
+     * @throws IllegalArgumentException if the domain or path of the
+     * cookie contains a control character or <code>;</code>
+     */
+    public static CookieTemplate of(Cookie cookie) {
+        return new CookieTemplate(cookie.getName(), cookie.getDomain(),
+            cookie.getPath(), cookie.getMaxAge(), cookie.getSecure(),
+            cookie.isHttpOnly());
+    }
+
+    /**
+     * Creates a template for the session tracking cookies of a web
+     * application.  When the configuration does not specify them, the
+     * name is <code>JSESSIONID</code> and the path is the context path,
+     * or <code>/</code> for the root context.
+     *
+     * @param config the session cookie configuration
+     * @param contextPath the context path of the web application, as
+     * returned by {@link javax.servlet.ServletContext#getContextPath}
+     *
+     * @return the template
+     *
+     * @throws IllegalArgumentException if the configured name is not a
+     * valid cookie name, or the domain or path contains a control
+     * character or <code>;</code>
+     */
+    public static CookieTemplate of(SessionCookieConfig config,
+                                    String contextPath) {
+        String name = config.getName();
+        if (name == null) {
+            name = "JSESSIONID";
+        }
+        String path = config.getPath();
+        if (path == null) {
+            path = (contextPath == null || contextPath.length() == 0)
+                ? "/" : contextPath;
+        }
+        return new CookieTemplate(name, config.getDomain(), path,
+            config.getMaxAge(), config.isSecure(), config.isHttpOnly());
+    }
+
+    /**
+     * Gets the name of the cookie.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the domain of the cookie.
+     *
+     * @return the domain, or <code>null</code> if it is not set
+     */
+    public String getDomain() {
+        return domain;
+    }
+
+    /**
+     * Gets the path of the cookie.
+     *
+     * @return the path, or <code>null</code> if it is not set
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Gets the maximum age of the cookie in seconds.
+     *
+     * @return the maximum age, negative if the cookie is removed when
+     * the browser exits
+     */
+    public int getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Checks whether the cookie is only sent over secure connections.
+     *
+     * @return true if the cookie has the <code>Secure</code> attribute
+     */
+    public boolean isSecure() {
+        return secure;
+    }
+
+    /**
+     * Checks whether the cookie is marked as <i>HttpOnly</i>.
+     *
+     * @return true if the cookie has the <code>HttpOnly</code> attribute
+     */
+    public boolean isHttpOnly() {
+        return httpOnly;
+    }
+
+    /**
+     * Gets the serialized attributes, which follow the value in a
+     * <code>Set-Cookie</code> header.
+     *
+     * @return the attributes, each starting with <code>"; "</code>, or
+     * the empty string if the cookie has none
+     */
+    public String getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Appends a <code>Set-Cookie</code> header value for the cookie with
+     * the given value.
+     *
+     * @param sb the builder to append to
+     * @param value the value of the cookie, which must consist of RFC 6265
+     * cookie-octets, optionally enclosed in double quotes
+     *
+     * @return <code>sb</code>
+     *
+     * @throws IllegalArgumentException if the value contains other
+     * characters
+     */
+    public StringBuilder appendTo(StringBuilder sb, String value) {
+        checkValue(value);
+        return sb.append(prefix).append(value).append(attributes);
+    }
+
+    /**
+     * Creates a <code>Set-Cookie</code> header value for the cookie with
+     * the given value.
+     *
+     * @param value the value of the cookie, which must consist of RFC 6265
+     * cookie-octets, optionally enclosed in double quotes
+     *
+     * @return the header value
+     *
+     * @throws IllegalArgumentException if the value contains other
+     * characters
+     */
+    public String toHeaderValue(String value) {
+        int len = prefix.length() + value.length() + attributes.length();
+        return appendTo(new StringBuilder(len), value).toString();
+    }
+
+    /**
+     * Adds a <code>Set-Cookie</code> header for the cookie with the given
+     * value to a response.
+     *
+     * @param resp the response
+     * @param value the value of the cookie, which must consist of RFC 6265
+     * cookie-octets, optionally enclosed in double quotes
+     *
+     * @throws IllegalArgumentException if the value contains other
+     * characters
+     */
+    public void addTo(HttpServletResponse resp, String value) {
+        resp.addHeader("Set-Cookie", toHeaderValue(value));
+    }
+
+    /**
+     * Creates a cookie with the name and attributes of this template and
+     * the given value.
+     *
+     * @param value the value of the cookie
+     *
+     * @return a new cookie
+     */
+    public Cookie toCookie(String value) {
+        Cookie cookie = new Cookie(name, value);
+        if (domain != null) {
+            cookie.setDomain(domain);
+        }
+        cookie.setPath(path);
+        cookie.setMaxAge(maxAge);
+        cookie.setSecure(secure);
+        cookie.setHttpOnly(httpOnly);
+        return cookie;
+    }
+
+    /**
+     * Returns the header value this template writes for an empty value.
+     *
+     * @return the header value
+     */
+    @Override
+    public String toString() {
+        return prefix + attributes;
+    }
+
+    private static void checkValue(String value) {
+        int start = 0;
+        int end = value.length();
+        if (end >= 2 && value.charAt(0) == '"' && value.charAt(end - 1) == '"') {
+            start++;
+            end--;
+        }
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            boolean octet = (c < 64)
+                ? (OCTET_LOW & (1L << c)) != 0
+                : c < 128 && (OCTET_HIGH & (1L << (c - 64))) != 0;
+            if (!octet) {
+                throw invalid("err.cookie_value_invalid", value);
+            }
+        }
+    }
+
+    private static void checkAttribute(String value) {
+        int len = value.length();
+        for (int i = 0; i < len; i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c == 0x7f || c == ';') {
+                throw invalid("err.cookie_attribute_invalid", value);
+            }
+        }
+    }
+
+    private static IllegalArgumentException invalid(String key, String value) {
+        return new IllegalArgumentException(
+            MessageFormat.format(lStrings.getString(key), value));
+    }
+}
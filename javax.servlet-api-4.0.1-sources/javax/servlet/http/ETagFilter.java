@@ -0,0 +1,615 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.function.Supplier;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+/**
+ * <p>A filter that adds an <code>ETag</code> to the successful responses
+ * to <code>GET</code> requests that do not set one, computed by hashing
+ * the body as it is written.</p>
+ *
+ * <p>Up to <code>bufferSize</code> bytes of the body are held back.  If
+ * the response ends before more are written, the <code>ETag</code>
+ * header is set, and a request whose <code>If-None-Match</code> header
+ * matches it gets a <code>304 Not Modified</code> response without the
+ * body.  A longer body is streamed as it is written, and its
+ * <code>ETag</code> is sent as a trailer field once it is complete,
+ * using {@link HttpServletResponse#setTrailerFields}, if the protocol
+ * of the response supports trailers.  A response whose declared content
+ * length exceeds <code>bufferSize</code> is not hashed.</p>
+ *
+ * <p>The filter is configured by these init parameters:</p>
+ * <ul>
+ * <li><code>bufferSize</code>: the largest body held back, in bytes
+ * (default {@value #DEFAULT_BUFFER_SIZE})</li>
+ * <li><code>algorithm</code>: the <code>MessageDigest</code> algorithm
+ * (default {@value #DEFAULT_ALGORITHM})</li>
+ * </ul>
+ *
+ * <p>The entity tags are the base64url encoded digests of the bodies, in
+ * double quotes.  The output stream supports {@link WriteListener}; in
+ * non-blocking mode each write makes at most one write to the stream of
+ * the response.</p>
+ *
+ * @since 4.0
+ */
+public class ETagFilter extends HttpFilter {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String LSTRING_FILE =
+        "javax.servlet.http.LocalStrings";
+    private static final ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+
+    /** The largest body held back unless configured otherwise. */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /** The digest algorithm used unless configured otherwise. */
+    public static final String DEFAULT_ALGORITHM = "MD5";
+
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private transient MessageDigest prototype;
+
+    /**
+     * Constructs an ETag filter.
+     */
+    public ETagFilter() { }
+
+    /**
+     * Reads the init parameters of the filter.
+     *
+     * @throws ServletException if an init parameter is not valid
+     */
+    @Override
+    public void init() throws ServletException {
+        String size = getInitParameter("bufferSize");
+        if (size != null) {
+            try {
+                bufferSize = Integer.parseInt(size.trim());
+            } catch (NumberFormatException e) {
+                bufferSize = -1;
+            }
+            if (bufferSize < 0) {
+                throw invalidParameter("bufferSize", size);
+            }
+        }
+        String algorithm = getInitParameter("algorithm");
+        if (algorithm != null) {
+            try {
+                prototype = MessageDigest.getInstance(algorithm.trim());
+            } catch (NoSuchAlgorithmException e) {
+                throw invalidParameter("algorithm", algorithm);
+            }
+        }
+    }
+
+    /**
+     * Passes <code>GET</code> requests on with a response that hashes its
+     * body, and other requests unchanged.
+     *
+     * @param req the request
+     * @param res the response
+     * @param chain the filter chain
+     *
+     * @throws IOException if an input or output error occurs
+     * @throws ServletException if the request cannot be processed
+     */
+    @Override
+    protected void doFilter(HttpServletRequest req, HttpServletResponse res,
+                            FilterChain chain)
+            throws IOException, ServletException {
+        if (!"GET".equals(req.getMethod())) {
+            chain.doFilter(req, res);
+            return;
+        }
+        final ETagResponse tagging = new ETagResponse(req, res, this);
+        chain.doFilter(req, tagging);
+        if (req.isAsyncStarted()) {
+            req.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) throws IOException {
+                    tagging.finish();
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) { }
+
+                @Override
+                public void onError(AsyncEvent event) { }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) { }
+            });
+        } else {
+            tagging.finish();
+        }
+    }
+
+    // file private
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    // file private
+    MessageDigest newDigest() {
+        MessageDigest digest = prototype;
+        try {
+            if (digest == null) {
+                digest = MessageDigest.getInstance(DEFAULT_ALGORITHM);
+                prototype = digest;
+            }
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            try {
+                return MessageDigest.getInstance(digest.getAlgorithm());
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // file private
+    static String toETag(byte[] digest) {
+        return '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + '"';
+    }
+
+    private static ServletException invalidParameter(String name, String value) {
+        String msg = lStrings.getString("err.filter.invalidInitParameter");
+        return new ServletException(MessageFormat.format(msg, name, value));
+    }
+}
+
+
+/*
+ * A response that hashes its body, holding it back while it is small
+ * enough for a 304 response to replace it.
+ */
+// file private
+class ETagResponse extends HttpServletResponseWrapper {
+
+    private static final ResourceBundle lStrings
+        = ResourceBundle.getBundle("javax.servlet.http.LocalStrings");
+
+    private final HttpServletRequest request;
+    private final ETagFilter filter;
+
+    private ETagOutputStream stream;
+    private PrintWriter writer;
+    private boolean usingOutputStream;
+    private long contentLength = -1;
+
+    // the trailers set by the application, once ours are installed
+    private boolean trailersInstalled;
+    private Supplier<Map<String, String>> trailers;
+
+    // file private
+    ETagResponse(HttpServletRequest request, HttpServletResponse r,
+                 ETagFilter filter) {
+        super(r);
+        this.request = request;
+        this.filter = filter;
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        setContentLengthLong(len);
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        super.setContentLengthLong(len);
+        contentLength = len;
+    }
+
+    @Override
+    public void setTrailerFields(Supplier<Map<String, String>> supplier) {
+        if (trailersInstalled) {
+            trailers = supplier;
+        } else {
+            super.setTrailerFields(supplier);
+        }
+    }
+
+    @Override
+    public Supplier<Map<String, String>> getTrailerFields() {
+        return trailersInstalled ? trailers : super.getTrailerFields();
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException(
+                lStrings.getString("err.ise.getOutputStream"));
+        }
+        usingOutputStream = true;
+        return stream();
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (usingOutputStream) {
+            throw new IllegalStateException(
+                lStrings.getString("err.ise.getWriter"));
+        }
+        if (writer == null) {
+            OutputStreamWriter w = new OutputStreamWriter(
+                stream(), getCharacterEncoding());
+            writer = new PrintWriter(w);
+        }
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        } else if (stream != null) {
+            stream.flush();
+        } else {
+            super.flushBuffer();
+        }
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        contentLength = -1;
+        if (stream != null) {
+            stream.restart();
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        if (stream != null) {
+            stream.restart();
+        }
+    }
+
+    /*
+     * Writes whatever has been held back, once the request has been
+     * processed.  Nothing is done if no body was written.
+     */
+    // file private
+    void finish() throws IOException {
+        if (stream == null) {
+            return;
+        }
+        stream.setFinishing();
+        if (writer != null) {
+            writer.flush();
+        }
+        stream.finish();
+    }
+
+    /*
+     * Tests whether the body may be tagged: the response is successful,
+     * has no entity tag yet, and is not too long to hold back or to send
+     * with trailers.
+     */
+    // file private
+    boolean isTaggable() {
+        return getStatus() == SC_OK && getHeader("ETag") == null
+            && contentLength <= filter.getBufferSize()
+            && !isCommitted();
+    }
+
+    /*
+     * Completes a body that was held back whole: returns true if it is
+     * replaced by a 304 response, or sets the ETag header and the content
+     * length and returns false.
+     */
+    // file private
+    boolean completeHeld(String etag, int length) {
+        if (HttpServlet.matchesAny(request.getHeaders("If-None-Match"),
+                                   etag, true)) {
+            setStatus(SC_NOT_MODIFIED);
+            super.setHeader("ETag", etag);
+            return true;
+        }
+        super.setHeader("ETag", etag);
+        if (contentLength < 0) {
+            super.setContentLengthLong(length);
+        }
+        return false;
+    }
+
+    /*
+     * Arranges for the entity tag to be sent as a trailer field, and
+     * returns false if the response does not support trailers.
+     */
+    // file private
+    boolean installTrailer(final ETagOutputStream source) {
+        final Supplier<Map<String, String>> previous = super.getTrailerFields();
+        try {
+            super.setTrailerFields(() -> {
+                Map<String, String> fields = new HashMap<>();
+                Supplier<Map<String, String>> app =
+                    trailersInstalled ? trailers : previous;
+                if (app != null) {
+                    Map<String, String> appFields = app.get();
+                    if (appFields != null) {
+                        fields.putAll(appFields);
+                    }
+                }
+                String etag = source.getETag();
+                if (etag != null) {
+                    fields.put("etag", etag);
+                }
+                return fields;
+            });
+        } catch (IllegalStateException e) {
+            // no trailers for this protocol, or already committed
+            return false;
+        }
+        trailers = previous;
+        trailersInstalled = true;
+        String declared = getHeader("Trailer");
+        super.setHeader("Trailer", (declared == null) ? "ETag" : declared + ", ETag");
+        return true;
+    }
+
+    private ETagOutputStream stream() throws IOException {
+        if (stream == null) {
+            stream = new ETagOutputStream(this, super.getOutputStream(), filter);
+        }
+        return stream;
+    }
+}
+
+
+/*
+ * Hashes a body, holding it back while it fits in the buffer and then
+ * streaming it.
+ */
+// file private
+class ETagOutputStream extends ServletOutputStream {
+
+    private static final ResourceBundle lStrings
+        = ResourceBundle.getBundle("javax.servlet.http.LocalStrings");
+
+    private static final int HOLDING = 0;
+    private static final int STREAMING = 1;
+    private static final int PASSING = 2;
+    private static final int FINISHED = 3;
+
+    private final ETagResponse response;
+    private final ServletOutputStream out;
+    private final ETagFilter filter;
+
+    private int state = HOLDING;
+    private boolean finishing;
+
+    private MessageDigest digest;
+    private volatile String etag;
+
+    private byte[] held = new byte[1024];
+    private int heldCount;
+    private final byte[] single = new byte[1];
+
+    // file private
+    ETagOutputStream(ETagResponse response, ServletOutputStream out,
+                     ETagFilter filter) {
+        this.response = response;
+        this.out = out;
+        this.filter = filter;
+    }
+
+    // file private
+    String getETag() {
+        return etag;
+    }
+
+    // file private
+    void setFinishing() {
+        finishing = true;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        switch (state) {
+        case HOLDING:
+            if (heldCount + len <= filter.getBufferSize()
+                    && response.isTaggable()) {
+                hold(b, off, len);
+                return;
+            }
+            startStreaming();
+            if (heldCount > 0) {
+                // one write for the held bytes and these
+                hold(b, off, len);
+                if (state == STREAMING) {
+                    update(b, off, len);
+                }
+                out.write(held, 0, heldCount);
+                heldCount = 0;
+                return;
+            }
+            write(b, off, len);
+            return;
+        case STREAMING:
+            update(b, off, len);
+            out.write(b, off, len);
+            return;
+        case PASSING:
+            out.write(b, off, len);
+            return;
+        default:
+            throw new IOException(lStrings.getString("err.io.streamClosed"));
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (finishing) {
+            return;
+        }
+        if (state == HOLDING) {
+            startStreaming();
+            if (heldCount > 0) {
+                out.write(held, 0, heldCount);
+                heldCount = 0;
+            }
+        }
+        if (state != FINISHED) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (state != FINISHED) {
+            finish();
+            out.close();
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+        return out.isReady();
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+        out.setWriteListener(writeListener);
+    }
+
+    // file private
+    void finish() throws IOException {
+        if (state == HOLDING) {
+            if (heldCount > 0 && response.isTaggable()) {
+                update(held, 0, heldCount);
+                etag = ETagFilter.toETag(digest().digest());
+                if (!response.completeHeld(etag, heldCount)) {
+                    out.write(held, 0, heldCount);
+                }
+            } else if (heldCount > 0) {
+                out.write(held, 0, heldCount);
+            }
+            heldCount = 0;
+        } else if (state == STREAMING) {
+            etag = ETagFilter.toETag(digest.digest());
+        }
+        state = FINISHED;
+    }
+
+    // file private
+    void restart() {
+        heldCount = 0;
+        if (digest != null) {
+            digest.reset();
+        }
+        if (state == STREAMING || state == PASSING) {
+            // the headers may have been sent, so the body is not held back
+            // again, but it is hashed from its new start
+            return;
+        }
+        if (state != FINISHED) {
+            state = HOLDING;
+        }
+    }
+
+    /*
+     * Stops holding back the body: it is hashed as it is streamed if the
+     * entity tag can be sent as a trailer, and passed on otherwise.  The
+     * held bytes are hashed, and left to the caller to write.
+     */
+    private void startStreaming() {
+        if (response.isTaggable() && response.installTrailer(this)) {
+            state = STREAMING;
+            update(held, 0, heldCount);
+        } else {
+            state = PASSING;
+        }
+    }
+
+    private void hold(byte[] b, int off, int len) {
+        if (held.length - heldCount < len) {
+            held = Arrays.copyOf(held, Math.max(held.length * 2, heldCount + len));
+        }
+        System.arraycopy(b, off, held, heldCount, len);
+        heldCount += len;
+    }
+
+    private void update(byte[] b, int off, int len) {
+        if (len > 0) {
+            digest().update(b, off, len);
+        }
+    }
+
+    private MessageDigest digest() {
+        if (digest == null) {
+            digest = filter.newDigest();
+        }
+        return digest;
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+
+/**
+ * <p>Parses an <i>application/x-www-form-urlencoded</i> request body
+ * incrementally.  Bytes are fed to the parser in chunks of any size,
+ * and each name/value pair is decoded and passed to a handler as soon
+ * as its terminating <code>&amp;</code> (or the end of the body) has
+ * been seen, so only the pair being parsed is held in memory.</p>
+ *
+ * <p>Pairs are decoded as described for {@link QueryString}, with the
+ * charset given to the constructor, which should be the character
+ * encoding of the request.  The number of pairs and the size of each
+ * pair are limited; exceeding a limit makes the parser throw an
+ * <code>IllegalStateException</code>.</p>
+ *
+ * <p>The body can be read from a stream in blocking mode with
+ * {@link #parse(InputStream)}, read without blocking with
+ * {@link #parseNonBlocking}, or pushed to the parser with
+ * {@link #update} and {@link #finish}.</p>
+ *
+ * <p>Instances are not safe for use by multiple threads, and parse a
+ * single body.</p>
+ *
+ * @since 4.0
+ */
+public class FormDataParser {
+
+    private static final String LSTRING_FILE =
+        "javax.servlet.http.LocalStrings";
+    private static final ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+
+    private static final int CHUNK_SIZE = 4096;
+
+    private final PercentDecoder decoder;
+    private final int maxParameterCount;
+    private final int maxParameterSize;
+    private final BiConsumer<String, String> handler;
+
+    // the raw bytes of the pair being parsed, and the index of its '='
+    private byte[] pair = new byte[64];
+    private int pairLength;
+    private int equals = -1;
+
+    private int parameterCount;
+    private boolean finished;
+
+    // reject pairs without '=' and malformed escapes, as HttpUtils does
+    private boolean strict;
+
+    /**
+     * Constructs a parser.
+     *
+     * @param charset           the charset of the escaped bytes, and of
+     *                          any bytes that are not escaped
+     * @param maxParameterCount the largest number of pairs accepted
+     * @param maxParameterSize  the largest size of a single pair, in
+     *                          bytes as sent, including the <code>=</code>
+     * @param handler           receives the decoded name and value of
+     *                          each pair, in the order of the body
+     *
+     * @throws NullPointerException if <code>charset</code> or
+     * <code>handler</code> is null
+     * @throws IllegalArgumentException if a limit is negative
+     */
+    public FormDataParser(Charset charset, int maxParameterCount,
+                          int maxParameterSize,
+                          BiConsumer<String, String> handler) {
+        if (charset == null || handler == null) {
+            throw new NullPointerException();
+        }
+        if (maxParameterCount < 0 || maxParameterSize < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.decoder = new PercentDecoder(charset);
+        this.maxParameterCount = maxParameterCount;
+        this.maxParameterSize = maxParameterSize;
+        this.handler = handler;
+    }
+
+    // package private
+    void setStrict(boolean strict) {
+        this.strict = strict;
+    }
+
+    /**
+     * Parses the next bytes of the body.
+     *
+     * @param b   the array holding the bytes
+     * @param off the offset of the first byte
+     * @param len the number of bytes
+     *
+     * @throws IllegalStateException if a limit is exceeded, or
+     * {@link #finish} has been called
+     */
+    public void update(byte[] b, int off, int len) {
+        if (finished) {
+            throw new IllegalStateException();
+        }
+        int end = off + len;
+        int start = off;
+        for (int i = off; i < end; i++) {
+            byte c = b[i];
+            if (c == '&') {
+                append(b, start, i);
+                endPair();
+                start = i + 1;
+            } else if (c == '=' && equals < 0) {
+                append(b, start, i);
+                equals = pairLength;
+                append(b, i, i + 1);
+                start = i + 1;
+            }
+        }
+        append(b, start, end);
+    }
+
+    /**
+     * Signals the end of the body, passing the last pair to the handler.
+     *
+     * @throws IllegalStateException if a limit is exceeded
+     */
+    public void finish() {
+        if (!finished) {
+            endPair();
+            finished = true;
+        }
+    }
+
+    /**
+     * Reads the body from a stream, in blocking mode, until the end of
+     * the stream is reached.
+     *
+     * @param in the stream to read the body from
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalStateException if a limit is exceeded
+     */
+    public void parse(InputStream in) throws IOException {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int n;
+        while ((n = in.read(chunk, 0, chunk.length)) != -1) {
+            update(chunk, 0, n);
+        }
+        finish();
+    }
+
+    /**
+     * Reads the body from a request input stream in non-blocking mode,
+     * by setting a {@link ReadListener} on it.  Asynchronous processing
+     * must have been started for the request.
+     *
+     * @param in the input stream of the request
+     *
+     * @return a future that is completed once the whole body has been
+     * parsed, or completed exceptionally if reading fails or a limit is
+     * exceeded, in which case reading stops
+     *
+     * @throws IllegalStateException if a <code>ReadListener</code> can
+     * not be set on the stream
+     */
+    public CompletableFuture<Void> parseNonBlocking(final ServletInputStream in) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        in.setReadListener(new ReadListener() {
+
+            private final byte[] chunk = new byte[CHUNK_SIZE];
+
+            @Override
+            public void onDataAvailable() throws IOException {
+                try {
+                    while (!future.isDone() && in.isReady()) {
+                        int n = in.read(chunk, 0, chunk.length);
+                        if (n == -1) {
+                            return;
+                        }
+                        update(chunk, 0, n);
+                    }
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onAllDataRead() throws IOException {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    finish();
+                    future.complete(null);
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    private void append(byte[] b, int start, int end) {
+        int len = end - start;
+        if (len == 0) {
+            return;
+        }
+        if (pairLength + len > maxParameterSize) {
+            throw limitExceeded("err.form.parameterSize", maxParameterSize);
+        }
+        if (pairLength + len > pair.length) {
+            pair = Arrays.copyOf(pair,
+                Math.min(Math.max(pairLength + len, pair.length * 2),
+                         maxParameterSize));
+        }
+        System.arraycopy(b, start, pair, pairLength, len);
+        pairLength += len;
+    }
+
+    private void endPair() {
+        int len = pairLength;
+        int eq = equals;
+        pairLength = 0;
+        equals = -1;
+        if (len == 0) {
+            return;
+        }
+
+        if (++parameterCount > maxParameterCount) {
+            throw limitExceeded("err.form.parameterCount", maxParameterCount);
+        }
+
+        String name;
+        String value;
+        if (eq < 0) {
+            if (strict) {
+                throw new IllegalArgumentException();
+            }
+            name = decode(0, len);
+            value = "";
+        } else {
+            name = decode(0, eq);
+            value = decode(eq + 1, len);
+        }
+        handler.accept(name, value);
+    }
+
+    private String decode(int start, int end) {
+        String decoded = decoder.decode(pair, start, end);
+        if (decoded == null) {
+            if (strict) {
+                throw new IllegalArgumentException();
+            }
+            // keep malformed escapes as they were sent
+            decoded = new String(pair, start, end - start,
+                                 decoder.getCharset());
+        }
+        return decoded;
+    }
+
+    private static IllegalStateException limitExceeded(String key,
+                                                       int limit) {
+        String msg = lStrings.getString(key);
+        Object[] msgArgs = new Object[1];
+        msgArgs[0] = Integer.valueOf(limit);
+        return new IllegalStateException(MessageFormat.format(msg, msgArgs));
+    }
+}
@@ -22,8 +22,16 @@ import java.io.PrintWriter;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
 
 import javax.servlet.*;
@@ -82,12 +90,88 @@ public abstract class HttpServlet extends GenericServlet
     private static final String METHOD_TRACE = "TRACE";
 
     private static final String HEADER_IFMODSINCE = "If-Modified-Since";
+    private static final String HEADER_IFUNMODSINCE = "If-Unmodified-Since";
+    private static final String HEADER_IFMATCH = "If-Match";
+    private static final String HEADER_IFNONEMATCH = "If-None-Match";
+    private static final String HEADER_IFRANGE = "If-Range";
+    private static final String HEADER_RANGE = "Range";
+    private static final String HEADER_ETAG = "ETag";
     private static final String HEADER_LASTMOD = "Last-Modified";
+    private static final String HEADER_ALLOW = "Allow";
     
     private static final String LSTRING_FILE =
         "javax.servlet.http.LocalStrings";
     private static ResourceBundle lStrings =
         ResourceBundle.getBundle(LSTRING_FILE);
+
+    /*
+     * The set of overridden doXxx methods and the resulting Allow header
+     * only depend on the servlet class, so they are computed once per
+     * class instead of reflecting over the hierarchy on every request.
+     */
+    private static final ClassValue<HttpServletClassInfo> CLASS_INFO =
+        new ClassValue<HttpServletClassInfo>() {
+            @Override
+            protected HttpServletClassInfo computeValue(Class<?> type) {
+                return new HttpServletClassInfo(type);
+            }
+        };
+
+    /*
+     * Dispatch table for the methods handled by service().  The standard
+     * methods do not depend on the servlet class, so a single table is
+     * shared; whether a doXxx method is overridden is taken from CLASS_INFO.
+     */
+    private static final int DISPATCH_GET = 0;
+    private static final int DISPATCH_HEAD = 1;
+    private static final int DISPATCH_POST = 2;
+    private static final int DISPATCH_PUT = 3;
+    private static final int DISPATCH_DELETE = 4;
+    private static final int DISPATCH_OPTIONS = 5;
+    private static final int DISPATCH_TRACE = 6;
+
+    private static final Map<String, Integer> DISPATCH;
+
+    static {
+        Map<String, Integer> dispatch = new HashMap<>();
+        dispatch.put(METHOD_GET, DISPATCH_GET);
+        dispatch.put(METHOD_HEAD, DISPATCH_HEAD);
+        dispatch.put(METHOD_POST, DISPATCH_POST);
+        dispatch.put(METHOD_PUT, DISPATCH_PUT);
+        dispatch.put(METHOD_DELETE, DISPATCH_DELETE);
+        dispatch.put(METHOD_OPTIONS, DISPATCH_OPTIONS);
+        dispatch.put(METHOD_TRACE, DISPATCH_TRACE);
+        DISPATCH = Collections.unmodifiableMap(dispatch);
+    }
+
+    /*
+     * The "method not implemented" message, formatted once and split
+     * around the method name so rejecting an unknown method does not
+     * go through MessageFormat on every request.
+     */
+    private static final String NOT_IMPLEMENTED_PREFIX;
+    private static final String NOT_IMPLEMENTED_SUFFIX;
+
+    static {
+        String msg = MessageFormat.format(
+            lStrings.getString("http.method_not_implemented"), "{0}");
+        int index = msg.indexOf("{0}");
+        if (index < 0) {
+            NOT_IMPLEMENTED_PREFIX = msg;
+            NOT_IMPLEMENTED_SUFFIX = "";
+        } else {
+            NOT_IMPLEMENTED_PREFIX = msg.substring(0, index);
+            NOT_IMPLEMENTED_SUFFIX = msg.substring(index + 3);
+        }
+    }
+
+    /*
+     * Handlers registered with addMethodHandler, copied on write, and
+     * the Allow header that includes them; both are null if no handler
+     * has been registered.
+     */
+    private transient volatile Map<String, HttpMethodHandler> methodHandlers;
+    private transient volatile String allow;
    
     
     /**
@@ -96,6 +180,61 @@ public abstract class HttpServlet extends GenericServlet
      */
 
     public HttpServlet() { }
+
+
+    /**
+     * Registers a handler for an HTTP method that is not one of the
+     * methods dispatched by {@link #service(HttpServletRequest,
+     * HttpServletResponse)}, for example <code>PATCH</code>.
+     * Requests with that method are passed to the handler, and the
+     * method is included in the <code>Allow</code> header returned by
+     * {@link #doOptions}.
+     *
+     * <p>Handlers are meant to be registered while the servlet is being
+     * constructed or initialized, before it handles requests.
+     *
+     * @param method    the name of the HTTP method, which is case
+     *                  sensitive
+     *
+     * @param handler   the handler invoked for requests with that method
+     *
+     * @throws IllegalArgumentException if <code>method</code> is one of
+     *                  GET, HEAD, POST, PUT, DELETE, OPTIONS or TRACE
+     *
+     * @throws NullPointerException if <code>method</code> or
+     *                  <code>handler</code> is null
+     *
+     * @since 4.0
+     */
+    protected void addMethodHandler(String method, HttpMethodHandler handler) {
+        if (method == null || handler == null) {
+            throw new NullPointerException();
+        }
+        if (DISPATCH.containsKey(method)) {
+            String errMsg = lStrings.getString("http.method_handler_standard");
+            Object[] errArgs = new Object[1];
+            errArgs[0] = method;
+            throw new IllegalArgumentException(
+                MessageFormat.format(errMsg, errArgs));
+        }
+
+        synchronized (this) {
+            Map<String, HttpMethodHandler> handlers = new LinkedHashMap<>();
+            if (methodHandlers != null) {
+                handlers.putAll(methodHandlers);
+            }
+            handlers.put(method, handler);
+
+            StringBuilder sb = new StringBuilder(
+                CLASS_INFO.get(getClass()).allow);
+            for (String name : handlers.keySet()) {
+                sb.append(", ").append(name);
+            }
+
+            allow = sb.toString();
+            methodHandlers = Collections.unmodifiableMap(handlers);
+        }
+    }
     
 
     /**
@@ -205,6 +344,71 @@ public abstract class HttpServlet extends GenericServlet
     }
 
 
+    /**
+     *
+     * Returns the entity tag of the current representation of the
+     * resource identified by the <code>HttpServletRequest</code>,
+     * or <code>null</code> if there is none (the default).
+     *
+     * <p>The value must be a complete entity tag as defined by
+     * RFC 7232, including the double quotes and, for a weak tag,
+     * the <code>W/</code> prefix, for example <code>"v42"</code>
+     * or <code>W/"v42"</code>.
+     *
+     * <p>Servlets that can quickly determine an entity tag without
+     * generating the response body should override this method.
+     * Together with {@link #getLastModified}, it allows the
+     * <code>service</code> method to answer conditional requests
+     * (<code>If-Match</code>, <code>If-None-Match</code>,
+     * <code>If-Modified-Since</code>, <code>If-Unmodified-Since</code>
+     * and <code>If-Range</code>) with 304 (Not Modified) or
+     * 412 (Precondition Failed) before <code>doGet</code>,
+     * <code>doPut</code> or any other <code>do</code><i>XXX</i>
+     * method is called.
+     *
+     * @param req   the <code>HttpServletRequest</code>
+     *                  object that is sent to the servlet
+     *
+     * @return  the entity tag of the current representation,
+     *                  or <code>null</code> if it is not known
+     *
+     * @since 4.0
+     */
+
+    protected String getETag(HttpServletRequest req) {
+        return null;
+    }
+
+
+    /**
+     *
+     * Returns the headers that a GET request for the same resource
+     * would produce, without generating the response body, or
+     * <code>null</code> if they are not known (the default).
+     *
+     * <p>Servlets that can describe a response cheaply, for example
+     * from the size and type of a file, should override this method
+     * so that HEAD requests are answered without calling
+     * <code>doGet</code>.  Only the headers described by the returned
+     * value are set, so a servlet whose GET responses carry other
+     * headers should return <code>null</code> for them.
+     *
+     * @param req   the <code>HttpServletRequest</code>
+     *                  object that is sent to the servlet
+     *
+     * @return  the metadata of the response to a GET request,
+     *                  or <code>null</code> if it is not known
+     *
+     * @see #doHead
+     *
+     * @since 4.0
+     */
+
+    protected ResponseMetadata getResponseMetadata(HttpServletRequest req) {
+        return null;
+    }
+
+
     /**
      * 
      *
@@ -217,6 +421,12 @@ public abstract class HttpServlet extends GenericServlet
      * method counts the output bytes in the response
      * to set the Content-Length header accurately.
      *
+     * <p>If the servlet overrides {@link #getResponseMetadata}
+     * and it returns a value for the request, the response headers
+     * are set from that value and <code>doGet</code> is not called.
+     * Otherwise the body is generated by <code>doGet</code> and
+     * discarded.
+     *
      * <p>If you override this method, you can avoid computing
      * the response body and just set the response headers
      * directly to improve performance. Make sure that the
@@ -241,6 +451,14 @@ public abstract class HttpServlet extends GenericServlet
     protected void doHead(HttpServletRequest req, HttpServletResponse resp)
         throws ServletException, IOException
     {
+        if (CLASS_INFO.get(getClass()).getResponseMetadata) {
+            ResponseMetadata metadata = getResponseMetadata(req);
+            if (metadata != null) {
+                applyMetadata(resp, metadata);
+                return;
+            }
+        }
+
         NoBodyResponse response = new NoBodyResponse(resp);
         
         doGet(req, response);
@@ -421,32 +639,6 @@ public abstract class HttpServlet extends GenericServlet
     }
     
 
-    private Method[] getAllDeclaredMethods(Class<? extends HttpServlet> c) {
-
-        Class<?> clazz = c;
-        Method[] allMethods = null;
-
-        while (!clazz.equals(HttpServlet.class)) {
-            Method[] thisMethods = clazz.getDeclaredMethods();
-            if (allMethods != null && allMethods.length > 0) {
-                Method[] subClassMethods = allMethods;
-                allMethods =
-                    new Method[thisMethods.length + subClassMethods.length];
-                System.arraycopy(thisMethods, 0, allMethods, 0,
-                                 thisMethods.length);
-                System.arraycopy(subClassMethods, 0, allMethods, thisMethods.length,
-                                 subClassMethods.length);
-            } else {
-                allMethods = thisMethods;
-            }
-
-            clazz = clazz.getSuperclass();
-        }
-
-        return ((allMethods != null) ? allMethods : new Method[0]);
-    }
-
-
     /**
      * Called by the server (via the <code>service</code> method)
      * to allow a servlet to handle a OPTIONS request.
@@ -481,76 +673,11 @@ public abstract class HttpServlet extends GenericServlet
     protected void doOptions(HttpServletRequest req, HttpServletResponse resp)
         throws ServletException, IOException
     {
-        Method[] methods = getAllDeclaredMethods(this.getClass());
-        
-        boolean ALLOW_GET = false;
-        boolean ALLOW_HEAD = false;
-        boolean ALLOW_POST = false;
-        boolean ALLOW_PUT = false;
-        boolean ALLOW_DELETE = false;
-        boolean ALLOW_TRACE = true;
-        boolean ALLOW_OPTIONS = true;
-        
-        for (int i=0; i<methods.length; i++) {
-            String methodName = methods[i].getName();
-            
-            if (methodName.equals("doGet")) {
-                ALLOW_GET = true;
-                ALLOW_HEAD = true;
-            } else if (methodName.equals("doPost")) {
-                ALLOW_POST = true;
-            } else if (methodName.equals("doPut")) {
-                ALLOW_PUT = true;
-            } else if (methodName.equals("doDelete")) {
-                ALLOW_DELETE = true;
-            }
-            
-        }
-        
-        // we know "allow" is not null as ALLOW_OPTIONS = true
-        // when this method is invoked
-        StringBuilder allow = new StringBuilder();
-        if (ALLOW_GET) {
-            allow.append(METHOD_GET);
-        }
-        if (ALLOW_HEAD) {
-            if (allow.length() > 0) {
-                allow.append(", ");
-            }
-            allow.append(METHOD_HEAD);
-        }
-        if (ALLOW_POST) {
-            if (allow.length() > 0) {
-                allow.append(", ");
-            }
-            allow.append(METHOD_POST);
-        }
-        if (ALLOW_PUT) {
-            if (allow.length() > 0) {
-                allow.append(", ");
-            }
-            allow.append(METHOD_PUT);
-        }
-        if (ALLOW_DELETE) {
-            if (allow.length() > 0) {
-                allow.append(", ");
-            }
-            allow.append(METHOD_DELETE);
-        }
-        if (ALLOW_TRACE) {
-            if (allow.length() > 0) {
-                allow.append(", ");
-            }
-            allow.append(METHOD_TRACE);
-        }
-        if (ALLOW_OPTIONS) {
-            if (allow.length() > 0) {
-                allow.append(", ");
-            }
-            allow.append(METHOD_OPTIONS);
+        String value = allow;
+        if (value == null) {
+            value = CLASS_INFO.get(getClass()).allow;
         }
-        
-        resp.setHeader("Allow", allow.toString());
+        resp.setHeader(HEADER_ALLOW, value);
     }
     
     
@@ -615,6 +742,10 @@ public abstract class HttpServlet extends GenericServlet
      * {@link javax.servlet.Servlet#service} method. There's no
      * need to override this method.
      *
+     * <p>Requests for any other method are passed to the handler
+     * registered for it with {@link #addMethodHandler}, or are
+     * rejected with an HTTP 501 (Not Implemented) error.
+     *
      * @param req   the {@link HttpServletRequest} object that
      *                  contains the request the client made of
      *                  the servlet
@@ -636,62 +767,293 @@ public abstract class HttpServlet extends GenericServlet
         throws ServletException, IOException
     {
         String method = req.getMethod();
-
-        if (method.equals(METHOD_GET)) {
-            long lastModified = getLastModified(req);
-            if (lastModified == -1) {
-                // servlet doesn't support if-modified-since, no reason
-                // to go through further expensive logic
-                doGet(req, resp);
-            } else {
-                long ifModifiedSince = req.getDateHeader(HEADER_IFMODSINCE);
-                if (ifModifiedSince < lastModified) {
-                    // If the servlet mod time is later, call doGet()
-                    // Round down to the nearest second for a proper compare
-                    // A ifModifiedSince of -1 will always be less
-                    maybeSetLastModified(resp, lastModified);
-                    doGet(req, resp);
-                } else {
-                    resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        Integer dispatch = DISPATCH.get(method);
+
+        if (dispatch == null) {
+            Map<String, HttpMethodHandler> handlers = methodHandlers;
+            HttpMethodHandler handler =
+                (handlers != null) ? handlers.get(method) : null;
+            if (handler != null) {
+                HttpServletClassInfo info = CLASS_INFO.get(getClass());
+                if (info.conditional
+                        && !checkUnsafeConditions(info, req, resp)) {
+                    return;
                 }
+                handler.handle(req, resp);
+            } else {
+                //
+                // Note that this means NO servlet supports whatever
+                // method was requested, anywhere on this server.
+                //
+                resp.sendError(HttpServletResponse.SC_NOT_IMPLEMENTED,
+                    NOT_IMPLEMENTED_PREFIX + method + NOT_IMPLEMENTED_SUFFIX);
             }
+            return;
+        }
 
-        } else if (method.equals(METHOD_HEAD)) {
-            long lastModified = getLastModified(req);
-            maybeSetLastModified(resp, lastModified);
+        HttpServletClassInfo info = CLASS_INFO.get(getClass());
+
+        switch (dispatch) {
+        case DISPATCH_GET:
+            if (info.conditional) {
+                req = checkConditions(info, req, resp, true);
+                if (req == null) {
+                    return;
+                }
+            }
+            doGet(req, resp);
+            break;
+
+        case DISPATCH_HEAD:
+            if (info.conditional) {
+                req = checkConditions(info, req, resp, true);
+                if (req == null) {
+                    return;
+                }
+            }
             doHead(req, resp);
+            break;
 
-        } else if (method.equals(METHOD_POST)) {
+        case DISPATCH_POST:
+            if (info.conditional && !checkUnsafeConditions(info, req, resp)) {
+                return;
+            }
             doPost(req, resp);
-            
-        } else if (method.equals(METHOD_PUT)) {
+            break;
+
+        case DISPATCH_PUT:
+            if (info.conditional && !checkUnsafeConditions(info, req, resp)) {
+                return;
+            }
             doPut(req, resp);
-            
-        } else if (method.equals(METHOD_DELETE)) {
+            break;
+
+        case DISPATCH_DELETE:
+            if (info.conditional && !checkUnsafeConditions(info, req, resp)) {
+                return;
+            }
             doDelete(req, resp);
-            
-        } else if (method.equals(METHOD_OPTIONS)) {
-            doOptions(req,resp);
-            
-        } else if (method.equals(METHOD_TRACE)) {
-            doTrace(req,resp);
-            
-        } else {
-            //
-            // Note that this means NO servlet supports whatever
-            // method was requested, anywhere on this server.
-            //
+            break;
 
-            String errMsg = lStrings.getString("http.method_not_implemented");
-            Object[] errArgs = new Object[1];
-            errArgs[0] = method;
-            errMsg = MessageFormat.format(errMsg, errArgs);
-            
-            resp.sendError(HttpServletResponse.SC_NOT_IMPLEMENTED, errMsg);
+        case DISPATCH_OPTIONS:
+            doOptions(req, resp);
+            break;
+
+        default:
+            doTrace(req, resp);
+            break;
         }
     }
     
 
+    private void applyMetadata(HttpServletResponse resp,
+                               ResponseMetadata metadata) {
+        if (metadata.getContentType() != null) {
+            resp.setContentType(metadata.getContentType());
+        }
+        if (metadata.getContentLength() >= 0) {
+            resp.setContentLengthLong(metadata.getContentLength());
+        }
+        maybeSetLastModified(resp, metadata.getLastModified());
+        maybeSetETag(resp, metadata.getETag());
+    }
+
+
+    /*
+     * Evaluates the preconditions of RFC 7232, section 6, against the
+     * validators returned by getLastModified and getETag.  For GET and
+     * HEAD (safe is true) the validators are also set as response
+     * headers.  Returns null if the request has been answered with 304
+     * or 412, otherwise the request to pass on, which hides the Range
+     * header if an If-Range condition failed.
+     */
+    private HttpServletRequest checkConditions(HttpServletClassInfo info,
+                                               HttpServletRequest req,
+                                               HttpServletResponse resp,
+                                               boolean safe) {
+        long lastModified = info.getLastModified ? getLastModified(req) : -1;
+        String etag = info.getETag ? getETag(req) : null;
+        if (lastModified < 0 && etag == null) {
+            return req;
+        }
+        if (safe) {
+            maybeSetLastModified(resp, lastModified);
+            maybeSetETag(resp, etag);
+        }
+
+        // HTTP dates have a resolution of one second
+        long lastModifiedSeconds = (lastModified >= 0)
+            ? lastModified - lastModified % 1000 : -1;
+
+        if (req.getHeader(HEADER_IFMATCH) != null) {
+            if (!matchesAny(req.getHeaders(HEADER_IFMATCH), etag, false)) {
+                resp.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED);
+                return null;
+            }
+        } else if (lastModified >= 0) {
+            long ifUnmodifiedSince = getDateHeader(req, HEADER_IFUNMODSINCE);
+            if (ifUnmodifiedSince >= 0
+                    && lastModifiedSeconds > ifUnmodifiedSince) {
+                resp.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED);
+                return null;
+            }
+        }
+
+        if (req.getHeader(HEADER_IFNONEMATCH) != null) {
+            if (matchesAny(req.getHeaders(HEADER_IFNONEMATCH), etag, true)) {
+                resp.setStatus(safe
+                    ? HttpServletResponse.SC_NOT_MODIFIED
+                    : HttpServletResponse.SC_PRECONDITION_FAILED);
+                return null;
+            }
+        } else if (safe && lastModified >= 0) {
+            long ifModifiedSince = getDateHeader(req, HEADER_IFMODSINCE);
+            if (ifModifiedSince >= 0
+                    && lastModifiedSeconds <= ifModifiedSince) {
+                resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return null;
+            }
+        }
+
+        if (safe && req.getHeader(HEADER_RANGE) != null) {
+            String ifRange = req.getHeader(HEADER_IFRANGE);
+            if (ifRange != null
+                    && !ifRangeMatches(req, ifRange, etag, lastModifiedSeconds)) {
+                return new NoRangeRequest(req);
+            }
+        }
+
+        return req;
+    }
+
+
+    /*
+     * Checks the preconditions of a request with an unsafe method.  The
+     * validators are only computed if the request is conditional, so
+     * that plain POST, PUT and DELETE requests do not pay for them.
+     * Returns false if the request has been answered with 412.
+     */
+    private boolean checkUnsafeConditions(HttpServletClassInfo info,
+                                          HttpServletRequest req,
+                                          HttpServletResponse resp) {
+        if (req.getHeader(HEADER_IFMATCH) == null
+                && req.getHeader(HEADER_IFNONEMATCH) == null
+                && req.getHeader(HEADER_IFUNMODSINCE) == null) {
+            return true;
+        }
+        return checkConditions(info, req, resp, false) != null;
+    }
+
+
+    /*
+     * Returns the value of a date header, or -1 if the header is
+     * missing or is not a valid HTTP date, which RFC 7232 requires
+     * to be ignored.
+     */
+    private static long getDateHeader(HttpServletRequest req, String name) {
+        try {
+            return req.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+
+    /*
+     * Returns true if one of the If-Match or If-None-Match header values
+     * contains "*" or an entity tag matching etag.  The weak comparison
+     * function is used for If-None-Match and the strong one for If-Match.
+     */
+    // package private, also used by ETagFilter
+    static boolean matchesAny(Enumeration<String> values,
+                              String etag, boolean weak) {
+        while (values.hasMoreElements()) {
+            if (matches(values.nextElement(), etag, weak)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private static boolean matches(String header, String etag, boolean weak) {
+        boolean etagWeak = false;
+        int etagStart = 0;
+        if (etag != null && etag.startsWith("W/")) {
+            etagWeak = true;
+            etagStart = 2;
+        }
+
+        int len = header.length();
+        int i = 0;
+        while (i < len) {
+            char c = header.charAt(i);
+            if (c == ' ' || c == '\t' || c == ',') {
+                i++;
+                continue;
+            }
+            if (c == '*') {
+                return true;
+            }
+
+            boolean tagWeak = false;
+            int tagStart = i;
+            if (c == 'W' && header.startsWith("W/", i)) {
+                tagWeak = true;
+                tagStart = i + 2;
+            }
+            int quote = header.indexOf('"', tagStart + 1);
+            if (tagStart >= len || header.charAt(tagStart) != '"' || quote < 0) {
+                // not an entity tag, skip to the next list element
+                int comma = header.indexOf(',', i);
+                if (comma < 0) {
+                    return false;
+                }
+                i = comma + 1;
+                continue;
+            }
+
+            int tagLength = quote + 1 - tagStart;
+            if (etag != null
+                    && (weak || (!tagWeak && !etagWeak))
+                    && etag.length() - etagStart == tagLength
+                    && header.regionMatches(tagStart, etag, etagStart, tagLength)) {
+                return true;
+            }
+            i = quote + 1;
+        }
+        return false;
+    }
+
+
+    /*
+     * Returns true if the If-Range condition holds, that is if it
+     * carries a strong entity tag equal to etag or the exact
+     * modification date of the representation.
+     */
+    private static boolean ifRangeMatches(HttpServletRequest req,
+                                          String ifRange, String etag,
+                                          long lastModifiedSeconds) {
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return etag != null && !etag.startsWith("W/")
+                && !ifRange.startsWith("W/") && ifRange.equals(etag);
+        }
+        long date = getDateHeader(req, HEADER_IFRANGE);
+        return date >= 0 && date == lastModifiedSeconds;
+    }
+
+
+    /*
+     * Sets the ETag entity header field, if it has not already been
+     * set and if the value is meaningful.
+     */
+    private void maybeSetETag(HttpServletResponse resp, String etag) {
+        if (etag == null || resp.containsHeader(HEADER_ETAG))
+            return;
+        resp.setHeader(HEADER_ETAG, etag);
+    }
+
+
     /*
      * Sets the Last-Modified entity header field, if it has not
      * already been set and if the value is meaningful.  Called before
@@ -752,6 +1114,132 @@ public abstract class HttpServlet extends GenericServlet
 }
 
 
+/*
+ * Per-class dispatch metadata for HttpServlet subclasses: which of the
+ * doXxx methods (and getLastModified, getETag and getResponseMetadata)
+ * a subclass declares, and the
+ * pre-rendered value of the Allow header returned by doOptions.
+ */
+// file private
+final class HttpServletClassInfo {
+
+    final boolean doGet;
+    final boolean doPost;
+    final boolean doPut;
+    final boolean doDelete;
+    final boolean getLastModified;
+    final boolean getETag;
+    final boolean getResponseMetadata;
+    final boolean conditional;
+    final String allow;
+
+    // file private
+    HttpServletClassInfo(Class<?> c) {
+        boolean get = false;
+        boolean post = false;
+        boolean put = false;
+        boolean delete = false;
+        boolean lastModified = false;
+        boolean etag = false;
+        boolean metadata = false;
+
+        Class<?> clazz = c;
+        while (clazz != null && !clazz.equals(HttpServlet.class)) {
+            for (Method m : clazz.getDeclaredMethods()) {
+                String methodName = m.getName();
+                if (methodName.equals("doGet")) {
+                    get = true;
+                } else if (methodName.equals("doPost")) {
+                    post = true;
+                } else if (methodName.equals("doPut")) {
+                    put = true;
+                } else if (methodName.equals("doDelete")) {
+                    delete = true;
+                } else if (methodName.equals("getLastModified")) {
+                    lastModified = true;
+                } else if (methodName.equals("getETag")) {
+                    etag = true;
+                } else if (methodName.equals("getResponseMetadata")) {
+                    metadata = true;
+                }
+            }
+            clazz = clazz.getSuperclass();
+        }
+
+        doGet = get;
+        doPost = post;
+        doPut = put;
+        doDelete = delete;
+        getLastModified = lastModified;
+        getETag = etag;
+        getResponseMetadata = metadata;
+        conditional = lastModified || etag;
+
+        // TRACE and OPTIONS are always allowed
+        StringBuilder sb = new StringBuilder();
+        if (doGet) {
+            sb.append("GET, HEAD, ");
+        }
+        if (doPost) {
+            sb.append("POST, ");
+        }
+        if (doPut) {
+            sb.append("PUT, ");
+        }
+        if (doDelete) {
+            sb.append("DELETE, ");
+        }
+        sb.append("TRACE, OPTIONS");
+        allow = sb.toString();
+    }
+}
+
+
+/*
+ * A request that hides its Range and If-Range headers, passed on when
+ * an If-Range condition fails so that the full representation is sent.
+ */
+// file private
+class NoRangeRequest extends HttpServletRequestWrapper {
+
+    // file private
+    NoRangeRequest(HttpServletRequest r) {
+        super(r);
+    }
+
+    private static boolean isHidden(String name) {
+        return "Range".equalsIgnoreCase(name)
+            || "If-Range".equalsIgnoreCase(name);
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return isHidden(name) ? null : super.getHeader(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+        if (isHidden(name)) {
+            return Collections.emptyEnumeration();
+        }
+        return super.getHeaders(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaderNames() {
+        List<String> names = new ArrayList<>();
+        Enumeration<String> e = super.getHeaderNames();
+        while (e.hasMoreElements()) {
+            String name = e.nextElement();
+            if (!isHidden(name)) {
+                names.add(name);
+            }
+        }
+        return Collections.enumeration(names);
+    }
+}
+
+
 /*
  * A response that includes no body, for use in (dumb) "HEAD" support.
  * This just swallows that body, counting the bytes in order to set
@@ -906,6 +1394,33 @@ class NoBodyOutputStream extends ServletOutputStream {
         contentLength += len;
     }
 
+    @Override
+    public void write(ByteBuffer src) {
+        contentLength += src.remaining();
+        src.position(src.limit());
+    }
+
+    @Override
+    public void write(ByteBuffer[] srcs) {
+        for (ByteBuffer src : srcs) {
+            write(src);
+        }
+    }
+
+    @Override
+    public long transferFrom(FileChannel src, long position, long count)
+        throws IOException
+    {
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException();
+        }
+        // the file is not read, only the length of the region counted
+        long n = Math.min(count, Math.max(0, src.size() - position));
+        n = Math.min(n, Integer.MAX_VALUE);
+        contentLength += (int) n;
+        return n;
+    }
+
 
     public boolean isReady() {
         return false;
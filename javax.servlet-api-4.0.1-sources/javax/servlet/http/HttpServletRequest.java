@@ -88,6 +88,58 @@ public interface HttpServletRequest extends ServletRequest {
      */
     public Cookie[] getCookies();
 
+    /**
+     * Returns the first cookie with the given name that the client sent
+     * with this request.
+     *
+     * @implSpec
+     * The default implementation returns the first cookie with that
+     * name of {@link #getCookies}, so that the two always agree, also
+     * for a wrapper that overrides <code>getCookies</code>.  Containers
+     * may override it, for example with {@link CookieHeader}, to find a
+     * cookie without creating the others.
+     *
+     * @param name	the name of the cookie, which is case sensitive
+     *
+     * @return		the cookie, or <code>null</code> if the request
+     *			has no cookie with that name
+     *
+     * @since Servlet 4.0
+     */
+    default public Cookie getCookie(String name) {
+        Cookie[] cookies = getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (cookie.getName().equals(name)) {
+                    return cookie;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value of the first cookie with the given name that
+     * the client sent with this request.
+     *
+     * @implSpec
+     * The default implementation returns the value of
+     * {@link #getCookie}.  Containers may override it, for example with
+     * {@link CookieHeader}, to find the value without creating any
+     * <code>Cookie</code> object.
+     *
+     * @param name	the name of the cookie, which is case sensitive
+     *
+     * @return		the value of the cookie, or <code>null</code> if
+     *			the request has no cookie with that name
+     *
+     * @since Servlet 4.0
+     */
+    default public String getCookieValue(String name) {
+        Cookie cookie = getCookie(name);
+        return (cookie != null) ? cookie.getValue() : null;
+    }
+
     /**
      * Returns the value of the specified request header
      * as a <code>long</code> value that represents a
@@ -511,7 +563,9 @@ public interface HttpServletRequest extends ServletRequest {
      * to append query parameters.
      *
      * <p>This method is useful for creating redirect messages
-     * and for reporting errors.
+     * and for reporting errors. Code that builds many URLs per
+     * request can use {@link RequestURLBuilder} to append them to
+     * its own <code>StringBuilder</code> instead.
      *
      * @return		a <code>StringBuffer</code> object containing
      *			the reconstructed URL
@@ -37,6 +37,44 @@ import javax.servlet.ServletRequestWrapper;
 
 public class HttpServletRequestWrapper extends ServletRequestWrapper implements HttpServletRequest {
 
+    // the methods of HttpServletRequest, as delegating methods of this class
+    private static final int GET_AUTH_TYPE = method("getAuthType");
+    private static final int GET_COOKIES = method("getCookies");
+    private static final int GET_DATE_HEADER = method("getDateHeader", String.class);
+    private static final int GET_HEADER = method("getHeader", String.class);
+    private static final int GET_HEADERS = method("getHeaders", String.class);
+    private static final int GET_HEADER_NAMES = method("getHeaderNames");
+    private static final int GET_INT_HEADER = method("getIntHeader", String.class);
+    private static final int GET_HTTP_SERVLET_MAPPING = method("getHttpServletMapping");
+    private static final int GET_METHOD = method("getMethod");
+    private static final int GET_PATH_INFO = method("getPathInfo");
+    private static final int GET_PATH_TRANSLATED = method("getPathTranslated");
+    private static final int GET_CONTEXT_PATH = method("getContextPath");
+    private static final int GET_QUERY_STRING = method("getQueryString");
+    private static final int GET_REMOTE_USER = method("getRemoteUser");
+    private static final int IS_USER_IN_ROLE = method("isUserInRole", String.class);
+    private static final int GET_USER_PRINCIPAL = method("getUserPrincipal");
+    private static final int GET_REQUESTED_SESSION_ID = method("getRequestedSessionId");
+    private static final int GET_REQUEST_URI = method("getRequestURI");
+    private static final int GET_REQUEST_URL = method("getRequestURL");
+    private static final int GET_SERVLET_PATH = method("getServletPath");
+    private static final int GET_SESSION_CREATE = method("getSession", boolean.class);
+    private static final int GET_SESSION = method("getSession");
+    private static final int CHANGE_SESSION_ID = method("changeSessionId");
+    private static final int IS_REQUESTED_SESSION_ID_VALID = method("isRequestedSessionIdValid");
+    private static final int IS_REQUESTED_SESSION_ID_FROM_COOKIE = method("isRequestedSessionIdFromCookie");
+    private static final int IS_REQUESTED_SESSION_ID_FROM_URL = method("isRequestedSessionIdFromURL");
+    private static final int IS_REQUESTED_SESSION_ID_FROM_URL_DEPRECATED = method("isRequestedSessionIdFromUrl");
+    private static final int AUTHENTICATE = method("authenticate", HttpServletResponse.class);
+    private static final int LOGIN = method("login", String.class, String.class);
+    private static final int LOGOUT = method("logout");
+    private static final int GET_PARTS = method("getParts");
+    private static final int GET_PART = method("getPart", String.class);
+    private static final int UPGRADE = method("upgrade", Class.class);
+    private static final int NEW_PUSH_BUILDER = method("newPushBuilder");
+    private static final int GET_TRAILER_FIELDS = method("getTrailerFields");
+    private static final int IS_TRAILER_FIELDS_READY = method("isTrailerFieldsReady");
+
     /** 
      * Constructs a request object wrapping the given request.
      * @throws java.lang.IllegalArgumentException if the request is null
@@ -47,8 +85,12 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
         super(request);
     }
     
-    private HttpServletRequest _getHttpServletRequest() {
-        return (HttpServletRequest) super.getRequest();
+    private static int method(String name, Class<?>... parameterTypes) {
+        return delegatingMethod(HttpServletRequestWrapper.class, name, parameterTypes);
+    }
+
+    private HttpServletRequest _getHttpServletRequest(int method) {
+        return (HttpServletRequest) getDelegate(method);
     }
 
     /**
@@ -57,7 +99,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public String getAuthType() {
-        return this._getHttpServletRequest().getAuthType();
+        return this._getHttpServletRequest(GET_AUTH_TYPE).getAuthType();
     }
    
     /**
@@ -66,7 +108,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public Cookie[] getCookies() {
-        return this._getHttpServletRequest().getCookies();
+        return this._getHttpServletRequest(GET_COOKIES).getCookies();
     }
 
     /**
@@ -75,7 +117,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public long getDateHeader(String name) {
-        return this._getHttpServletRequest().getDateHeader(name);
+        return this._getHttpServletRequest(GET_DATE_HEADER).getDateHeader(name);
     }
                 
     /**
@@ -84,7 +126,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public String getHeader(String name) {
-        return this._getHttpServletRequest().getHeader(name);
+        return this._getHttpServletRequest(GET_HEADER).getHeader(name);
     }
     
     /**
@@ -93,7 +135,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public Enumeration<String> getHeaders(String name) {
-        return this._getHttpServletRequest().getHeaders(name);
+        return this._getHttpServletRequest(GET_HEADERS).getHeaders(name);
     }  
 
     /**
@@ -102,7 +144,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public Enumeration<String> getHeaderNames() {
-        return this._getHttpServletRequest().getHeaderNames();
+        return this._getHttpServletRequest(GET_HEADER_NAMES).getHeaderNames();
     }
     
     /**
@@ -111,7 +153,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
      public int getIntHeader(String name) {
-        return this._getHttpServletRequest().getIntHeader(name);
+        return this._getHttpServletRequest(GET_INT_HEADER).getIntHeader(name);
     }
 
     /**
@@ -120,7 +162,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
      @Override
      public HttpServletMapping getHttpServletMapping() {
-        return this._getHttpServletRequest().getHttpServletMapping();
+        return this._getHttpServletRequest(GET_HTTP_SERVLET_MAPPING).getHttpServletMapping();
     }
 
     /**
@@ -129,7 +171,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public String getMethod() {
-        return this._getHttpServletRequest().getMethod();
+        return this._getHttpServletRequest(GET_METHOD).getMethod();
     }
     
     /**
@@ -138,7 +180,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public String getPathInfo() {
-        return this._getHttpServletRequest().getPathInfo();
+        return this._getHttpServletRequest(GET_PATH_INFO).getPathInfo();
     }
 
     /**
@@ -147,7 +189,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public String getPathTranslated() {
-        return this._getHttpServletRequest().getPathTranslated();
+        return this._getHttpServletRequest(GET_PATH_TRANSLATED).getPathTranslated();
     }
 
     /**
@@ -156,7 +198,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public String getContextPath() {
-        return this._getHttpServletRequest().getContextPath();
+        return this._getHttpServletRequest(GET_CONTEXT_PATH).getContextPath();
     }
     
     /**
@@ -165,7 +207,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public String getQueryString() {
-        return this._getHttpServletRequest().getQueryString();
+        return this._getHttpServletRequest(GET_QUERY_STRING).getQueryString();
     }
     
     /**
@@ -174,7 +216,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public String getRemoteUser() {
-        return this._getHttpServletRequest().getRemoteUser();
+        return this._getHttpServletRequest(GET_REMOTE_USER).getRemoteUser();
     }
     
     /**
@@ -183,7 +225,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public boolean isUserInRole(String role) {
-        return this._getHttpServletRequest().isUserInRole(role);
+        return this._getHttpServletRequest(IS_USER_IN_ROLE).isUserInRole(role);
     }
     
     /**
@@ -192,7 +234,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public java.security.Principal getUserPrincipal() {
-        return this._getHttpServletRequest().getUserPrincipal();
+        return this._getHttpServletRequest(GET_USER_PRINCIPAL).getUserPrincipal();
     }
     
     /**
@@ -201,7 +243,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public String getRequestedSessionId() {
-        return this._getHttpServletRequest().getRequestedSessionId();
+        return this._getHttpServletRequest(GET_REQUESTED_SESSION_ID).getRequestedSessionId();
     }
     
     /**
@@ -210,7 +252,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public String getRequestURI() {
-        return this._getHttpServletRequest().getRequestURI();
+        return this._getHttpServletRequest(GET_REQUEST_URI).getRequestURI();
     }
 
     /**
@@ -219,7 +261,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public StringBuffer getRequestURL() {
-        return this._getHttpServletRequest().getRequestURL();
+        return this._getHttpServletRequest(GET_REQUEST_URL).getRequestURL();
     }
         
     /**
@@ -228,7 +270,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public String getServletPath() {
-        return this._getHttpServletRequest().getServletPath();
+        return this._getHttpServletRequest(GET_SERVLET_PATH).getServletPath();
     }
     
     /**
@@ -237,7 +279,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public HttpSession getSession(boolean create) {
-        return this._getHttpServletRequest().getSession(create);
+        return this._getHttpServletRequest(GET_SESSION_CREATE).getSession(create);
     }
     
     /**
@@ -246,7 +288,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public HttpSession getSession() {
-        return this._getHttpServletRequest().getSession();
+        return this._getHttpServletRequest(GET_SESSION).getSession();
     }
     
     /**
@@ -257,7 +299,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public String changeSessionId() {
-        return this._getHttpServletRequest().changeSessionId();
+        return this._getHttpServletRequest(CHANGE_SESSION_ID).changeSessionId();
     }
     
     /**
@@ -266,7 +308,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */ 
     @Override
     public boolean isRequestedSessionIdValid() {
-        return this._getHttpServletRequest().isRequestedSessionIdValid();
+        return this._getHttpServletRequest(IS_REQUESTED_SESSION_ID_VALID).isRequestedSessionIdValid();
     }
      
     /**
@@ -275,7 +317,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public boolean isRequestedSessionIdFromCookie() {
-        return this._getHttpServletRequest().isRequestedSessionIdFromCookie();
+        return this._getHttpServletRequest(IS_REQUESTED_SESSION_ID_FROM_COOKIE).isRequestedSessionIdFromCookie();
     }
     
     /**
@@ -284,7 +326,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */ 
     @Override
     public boolean isRequestedSessionIdFromURL() {
-        return this._getHttpServletRequest().isRequestedSessionIdFromURL();
+        return this._getHttpServletRequest(IS_REQUESTED_SESSION_ID_FROM_URL).isRequestedSessionIdFromURL();
     }
 
     /**
@@ -297,7 +339,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
     @Deprecated
     @Override
     public boolean isRequestedSessionIdFromUrl() {
-        return this._getHttpServletRequest().isRequestedSessionIdFromUrl();
+        return this._getHttpServletRequest(IS_REQUESTED_SESSION_ID_FROM_URL_DEPRECATED).isRequestedSessionIdFromUrl();
     }
 
     /**
@@ -309,7 +351,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
     @Override
     public boolean authenticate(HttpServletResponse response)
             throws IOException, ServletException {
-        return this._getHttpServletRequest().authenticate(response);
+        return this._getHttpServletRequest(AUTHENTICATE).authenticate(response);
     }
 
     /**
@@ -321,7 +363,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
     @Override
     public void login(String username, String password)
             throws ServletException {
-        this._getHttpServletRequest().login(username,password);
+        this._getHttpServletRequest(LOGIN).login(username,password);
     }
 
     /**
@@ -332,7 +374,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public void logout() throws ServletException {
-        this._getHttpServletRequest().logout();
+        this._getHttpServletRequest(LOGOUT).logout();
     }
 
     /**
@@ -346,7 +388,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public Collection<Part> getParts() throws IOException, ServletException {
-        return this._getHttpServletRequest().getParts(); 
+        return this._getHttpServletRequest(GET_PARTS).getParts(); 
     }
 
     /**
@@ -357,7 +399,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public Part getPart(String name) throws IOException, ServletException {
-        return this._getHttpServletRequest().getPart(name); 
+        return this._getHttpServletRequest(GET_PART).getPart(name); 
     
     }
 
@@ -370,7 +412,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
     @Override
     public <T extends HttpUpgradeHandler> T upgrade(Class<T> handlerClass)
             throws IOException, ServletException {
-        return this._getHttpServletRequest().upgrade(handlerClass);
+        return this._getHttpServletRequest(UPGRADE).upgrade(handlerClass);
     }
 
     /**
@@ -381,7 +423,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public PushBuilder newPushBuilder() {
-        return this._getHttpServletRequest().newPushBuilder();
+        return this._getHttpServletRequest(NEW_PUSH_BUILDER).newPushBuilder();
     }
 
     /**
@@ -392,7 +434,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public Map<String, String> getTrailerFields() {
-        return this._getHttpServletRequest().getTrailerFields();
+        return this._getHttpServletRequest(GET_TRAILER_FIELDS).getTrailerFields();
     }
 
     /**
@@ -403,6 +445,6 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public boolean isTrailerFieldsReady() {
-        return this._getHttpServletRequest().isTrailerFieldsReady();
+        return this._getHttpServletRequest(IS_TRAILER_FIELDS_READY).isTrailerFieldsReady();
     }
 }
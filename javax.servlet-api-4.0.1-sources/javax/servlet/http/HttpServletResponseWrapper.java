@@ -38,6 +38,31 @@ import javax.servlet.ServletResponseWrapper;
 
 public class HttpServletResponseWrapper extends ServletResponseWrapper implements HttpServletResponse {
 
+    // the methods of HttpServletResponse, as delegating methods of this class
+    private static final int ADD_COOKIE = method("addCookie", Cookie.class);
+    private static final int CONTAINS_HEADER = method("containsHeader", String.class);
+    private static final int ENCODE_URL = method("encodeURL", String.class);
+    private static final int ENCODE_REDIRECT_URL = method("encodeRedirectURL", String.class);
+    private static final int ENCODE_URL_DEPRECATED = method("encodeUrl", String.class);
+    private static final int ENCODE_REDIRECT_URL_DEPRECATED = method("encodeRedirectUrl", String.class);
+    private static final int SEND_ERROR_MESSAGE = method("sendError", int.class, String.class);
+    private static final int SEND_ERROR = method("sendError", int.class);
+    private static final int SEND_REDIRECT = method("sendRedirect", String.class);
+    private static final int SET_DATE_HEADER = method("setDateHeader", String.class, long.class);
+    private static final int ADD_DATE_HEADER = method("addDateHeader", String.class, long.class);
+    private static final int SET_HEADER = method("setHeader", String.class, String.class);
+    private static final int ADD_HEADER = method("addHeader", String.class, String.class);
+    private static final int SET_INT_HEADER = method("setIntHeader", String.class, int.class);
+    private static final int ADD_INT_HEADER = method("addIntHeader", String.class, int.class);
+    private static final int SET_STATUS = method("setStatus", int.class);
+    private static final int SET_STATUS_MESSAGE = method("setStatus", int.class, String.class);
+    private static final int GET_STATUS = method("getStatus");
+    private static final int GET_HEADER = method("getHeader", String.class);
+    private static final int GET_HEADERS = method("getHeaders", String.class);
+    private static final int GET_HEADER_NAMES = method("getHeaderNames");
+    private static final int SET_TRAILER_FIELDS = method("setTrailerFields", Supplier.class);
+    private static final int GET_TRAILER_FIELDS = method("getTrailerFields");
+
     /** 
      * Constructs a response adaptor wrapping the given response.
      * @throws java.lang.IllegalArgumentException if the response is null
@@ -48,8 +73,12 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
         super(response);
     }
     
-    private HttpServletResponse _getHttpServletResponse() {
-        return (HttpServletResponse) super.getResponse();
+    private static int method(String name, Class<?>... parameterTypes) {
+        return delegatingMethod(HttpServletResponseWrapper.class, name, parameterTypes);
+    }
+
+    private HttpServletResponse _getHttpServletResponse(int method) {
+        return (HttpServletResponse) getDelegate(method);
     }
     
     /**
@@ -58,7 +87,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
      */
     @Override
     public void addCookie(Cookie cookie) {
-        this._getHttpServletResponse().addCookie(cookie);
+        this._getHttpServletResponse(ADD_COOKIE).addCookie(cookie);
     }
 
     /**
@@ -67,7 +96,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
      */
     @Override
     public boolean containsHeader(String name) {
-        return this._getHttpServletResponse().containsHeader(name);
+        return this._getHttpServletResponse(CONTAINS_HEADER).containsHeader(name);
     }
     
     /**
@@ -76,7 +105,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
      */
     @Override
     public String encodeURL(String url) {
-        return this._getHttpServletResponse().encodeURL(url);
+        return this._getHttpServletResponse(ENCODE_URL).encodeURL(url);
     }
 
     /**
@@ -85,7 +114,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
      */
     @Override
     public String encodeRedirectURL(String url) {
-        return this._getHttpServletResponse().encodeRedirectURL(url);
+        return this._getHttpServletResponse(ENCODE_REDIRECT_URL).encodeRedirectURL(url);
     }
 
     /**
@@ -98,7 +127,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
     @Deprecated
     @Override
     public String encodeUrl(String url) {
-        return this._getHttpServletResponse().encodeUrl(url);
+        return this._getHttpServletResponse(ENCODE_URL_DEPRECATED).encodeUrl(url);
     }
     
     /**
@@ -111,7 +140,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
     @Deprecated
     @Override
     public String encodeRedirectUrl(String url) {
-        return this._getHttpServletResponse().encodeRedirectUrl(url);
+        return this._getHttpServletResponse(ENCODE_REDIRECT_URL_DEPRECATED).encodeRedirectUrl(url);
     }
     
     /**
@@ -120,7 +149,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
      */
     @Override
     public void sendError(int sc, String msg) throws IOException {
-        this._getHttpServletResponse().sendError(sc, msg);
+        this._getHttpServletResponse(SEND_ERROR_MESSAGE).sendError(sc, msg);
     }
 
     /**
@@ -129,7 +158,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
      */
     @Override
     public void sendError(int sc) throws IOException {
-        this._getHttpServletResponse().sendError(sc);
+        this._getHttpServletResponse(SEND_ERROR).sendError(sc);
     }
 
     /**
@@ -138,7 +167,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
      */
     @Override
     public void sendRedirect(String location) throws IOException {
-        this._getHttpServletResponse().sendRedirect(location);
+        this._getHttpServletResponse(SEND_REDIRECT).sendRedirect(location);
     }
     
     /**
@@ -147,7 +176,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
      */
     @Override
     public void setDateHeader(String name, long date) {
-        this._getHttpServletResponse().setDateHeader(name, date);
+        this._getHttpServletResponse(SET_DATE_HEADER).setDateHeader(name, date);
     }
     
     /**
@@ -156,7 +185,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
      */
     @Override
     public void addDateHeader(String name, long date) {
-        this._getHttpServletResponse().addDateHeader(name, date);
+        this._getHttpServletResponse(ADD_DATE_HEADER).addDateHeader(name, date);
     }
     
     /**
@@ -165,7 +194,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
      */
     @Override
     public void setHeader(String name, String value) {
-        this._getHttpServletResponse().setHeader(name, value);
+        this._getHttpServletResponse(SET_HEADER).setHeader(name, value);
     }
     
     /**
@@ -174,7 +203,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
      */
     @Override
     public void addHeader(String name, String value) {
-        this._getHttpServletResponse().addHeader(name, value);
+        this._getHttpServletResponse(ADD_HEADER).addHeader(name, value);
     }
     
     /**
@@ -183,7 +212,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
      */
     @Override
     public void setIntHeader(String name, int value) {
-        this._getHttpServletResponse().setIntHeader(name, value);
+        this._getHttpServletResponse(SET_INT_HEADER).setIntHeader(name, value);
     }
     
     /**
@@ -192,7 +221,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
      */
     @Override
     public void addIntHeader(String name, int value) {
-        this._getHttpServletResponse().addIntHeader(name, value);
+        this._getHttpServletResponse(ADD_INT_HEADER).addIntHeader(name, value);
     }
 
     /**
@@ -201,7 +230,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
      */
     @Override
     public void setStatus(int sc) {
-        this._getHttpServletResponse().setStatus(sc);
+        this._getHttpServletResponse(SET_STATUS).setStatus(sc);
     }
     
     /**
@@ -216,7 +245,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
     @Deprecated
     @Override
     public void setStatus(int sc, String sm) {
-        this._getHttpServletResponse().setStatus(sc, sm);
+        this._getHttpServletResponse(SET_STATUS_MESSAGE).setStatus(sc, sm);
     }
 
     /**
@@ -228,7 +257,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
      */
     @Override
     public int getStatus() {
-        return _getHttpServletResponse().getStatus();
+        return this._getHttpServletResponse(GET_STATUS).getStatus();
     }
 
     /**
@@ -246,7 +275,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
      */
     @Override
     public String getHeader(String name) {
-        return _getHttpServletResponse().getHeader(name);
+        return this._getHttpServletResponse(GET_HEADER).getHeader(name);
     }
 
     /**
@@ -266,7 +295,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
      */                        
     @Override
     public Collection<String> getHeaders(String name) {
-        return _getHttpServletResponse().getHeaders(name);
+        return this._getHttpServletResponse(GET_HEADERS).getHeaders(name);
     }
 
     /**
@@ -284,7 +313,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
      */
     @Override
     public Collection<String> getHeaderNames() {
-        return _getHttpServletResponse().getHeaderNames();
+        return this._getHttpServletResponse(GET_HEADER_NAMES).getHeaderNames();
     }
 
     /**
@@ -298,7 +327,7 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
      */
     @Override
     public void setTrailerFields(Supplier<Map<String, String>> supplier) {
-        _getHttpServletResponse().setTrailerFields(supplier);
+        this._getHttpServletResponse(SET_TRAILER_FIELDS).setTrailerFields(supplier);
     }
 
     /**
@@ -312,6 +341,6 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
      */
     @Override
     public Supplier<Map<String, String>> getTrailerFields() {
-        return _getHttpServletResponse().getTrailerFields();
+        return this._getHttpServletResponse(GET_TRAILER_FIELDS).getTrailerFields();
     }
 }
@@ -18,9 +18,13 @@
 package javax.servlet.http;
 
 import javax.servlet.ServletInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
-import java.util.StringTokenizer;
 import java.io.IOException;
 
 /**
@@ -72,43 +76,38 @@ public class HttpUtils {
      * 			from the parsed key-value pairs
      *
      * @exception IllegalArgumentException if the query string is invalid
+     *
+     * @see QueryString
      */
     public static Hashtable<String, String[]> parseQueryString(String s) {
 
-        String valArray[] = null;
-	
         if (s == null) {
             throw new IllegalArgumentException();
         }
 
-        Hashtable<String, String[]> ht = new Hashtable<String, String[]>();
-        StringBuilder sb = new StringBuilder();
-        StringTokenizer st = new StringTokenizer(s, "&");
-        while (st.hasMoreTokens()) {
-        String pair = st.nextToken();
-        int pos = pair.indexOf('=');
-        if (pos == -1) {
-            // XXX
-            // should give more detail about the illegal argument
-            throw new IllegalArgumentException();
-        }
-        String key = parseName(pair.substring(0, pos), sb);
-        String val = parseName(pair.substring(pos+1, pair.length()), sb);
-        if (ht.containsKey(key)) {
-            String oldVals[] = ht.get(key);
-            valArray = new String[oldVals.length + 1];
-            for (int i = 0; i < oldVals.length; i++) {
-                valArray[i] = oldVals[i];
+        PercentDecoder decoder = new PercentDecoder(StandardCharsets.ISO_8859_1);
+        Map<String, List<String>> values = new LinkedHashMap<>();
+        int len = s.length();
+        int start = 0;
+        while (start < len) {
+            int end = s.indexOf('&', start);
+            if (end < 0) {
+                end = len;
+            }
+            if (end > start) {
+                int pos = s.indexOf('=', start);
+                if (pos < 0 || pos >= end) {
+                    // XXX
+                    // should give more detail about the illegal argument
+                    throw new IllegalArgumentException();
+                }
+                addValue(values, decoder.decode(s, start, pos),
+                         decoder.decode(s, pos + 1, end));
             }
-            valArray[oldVals.length] = val;
-        } else {
-            valArray = new String[1];
-            valArray[0] = val;
+            start = end + 1;
         }
-        ht.put(key, valArray);
-    }
 
-	return ht;
+        return toHashtable(values);
     }
 
 
@@ -161,77 +160,71 @@ public class HttpUtils {
 	    throw new IllegalArgumentException();
 	}
 	
+        // XXX we shouldn't assume that the only kind of POST body
+        // is FORM data encoded using ASCII or ISO Latin/1 ... or
+        // that the body should always be treated as FORM data.
+        //
+
+        final Map<String, List<String>> values = new LinkedHashMap<>();
+        FormDataParser parser = new FormDataParser(StandardCharsets.ISO_8859_1,
+            Integer.MAX_VALUE, len, (name, value) -> addValue(values, name, value));
+        parser.setStrict(true);
+
 	//
 	// Make sure we read the entire POSTed body.
 	//
-        byte[] postedBytes = new byte [len];
+        byte[] chunk = new byte [Math.min(len, 4096)];
         try {
             int offset = 0;
        
 	    do {
-		int inputLen = in.read (postedBytes, offset, len - offset);
+		int inputLen = in.read (chunk, 0, Math.min(chunk.length, len - offset));
 		if (inputLen <= 0) {
 		    String msg = lStrings.getString("err.io.short_read");
 		    throw new IllegalArgumentException (msg);
 		}
+		parser.update(chunk, 0, inputLen);
 		offset += inputLen;
 	    } while ((len - offset) > 0);
 
 	} catch (IOException e) {
 	    throw new IllegalArgumentException(e.getMessage());
 	}
+        parser.finish();
 
-        // XXX we shouldn't assume that the only kind of POST body
-        // is FORM data encoded using ASCII or ISO Latin/1 ... or
-        // that the body should always be treated as FORM data.
-        //
-
-        try {
-            String postedBody = new String(postedBytes, 0, len, "8859_1");
-            return parseQueryString(postedBody);
-        } catch (java.io.UnsupportedEncodingException e) {
-            // XXX function should accept an encoding parameter & throw this
-            // exception.  Otherwise throw something expected.
-            throw new IllegalArgumentException(e.getMessage());
-        }
+        return toHashtable(values);
     }
 
 
     /*
-     * Parse a name in the query string.
+     * Adds a decoded pair, names and values being null if they contain
+     * a malformed escape.
      */
-    private static String parseName(String s, StringBuilder sb) {
-        sb.setLength(0);
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i); 
-            switch (c) {
-                case '+':
-                    sb.append(' ');
-                    break;
-                case '%':
-                    try {
-                        sb.append((char) Integer.parseInt(s.substring(i+1, i+3), 
-                                16));
-                        i += 2;
-                    } catch (NumberFormatException e) {
-                        // XXX
-                        // need to be more specific about illegal arg
-                        throw new IllegalArgumentException();
-                    } catch (StringIndexOutOfBoundsException e) {
-                        String rest  = s.substring(i);
-                        sb.append(rest);
-                        if (rest.length()==2)
-                            i++;
-                        }
-
-                        break;
-                default:
-                    sb.append(c);
-                    break;
-            }
+    private static void addValue(Map<String, List<String>> values,
+                                 String name, String value) {
+        if (name == null || value == null) {
+            // XXX
+            // need to be more specific about illegal arg
+            throw new IllegalArgumentException();
         }
+        List<String> list = values.get(name);
+        if (list == null) {
+            list = new ArrayList<String>(1);
+            values.put(name, list);
+        }
+        list.add(value);
+    }
 
-        return sb.toString();
+
+    private static Hashtable<String, String[]> toHashtable(
+            Map<String, List<String>> values) {
+        Hashtable<String, String[]> ht =
+            new Hashtable<String, String[]>(Math.max(11, values.size() * 2));
+        for (Map.Entry<String, List<String>> e : values.entrySet()) {
+            List<String> list = e.getValue();
+            ht.put(e.getKey(), list.toArray(new String[list.size()]));
+        }
+        return ht;
     }
 
 
@@ -255,28 +248,15 @@ public class HttpUtils {
      * 
      * @return		a <code>StringBuffer</code> object containing
      *			the reconstructed URL
+     *
+     * @see RequestURLBuilder
      */
     public static StringBuffer getRequestURL (HttpServletRequest req) {
-        StringBuffer url = new StringBuffer();
-        String scheme = req.getScheme ();
-        int port = req.getServerPort ();
+        String prefix = RequestURLBuilder.getPrefix(req);
         String urlPath = req.getRequestURI();
 
-        //String		servletPath = req.getServletPath ();
-        //String		pathInfo = req.getPathInfo ();
-
-        url.append (scheme);		// http, https
-        url.append ("://");
-        url.append (req.getServerName ());
-        if ((scheme.equals ("http") && port != 80)
-        || (scheme.equals ("https") && port != 443)) {
-            url.append (':');
-            url.append (req.getServerPort ());
-        }
-        //if (servletPath != null)
-        //    url.append (servletPath);
-        //if (pathInfo != null)
-        //    url.append (pathInfo);
+        StringBuffer url = new StringBuffer(prefix.length() + urlPath.length() + 16);
+        url.append(prefix);
         url.append(urlPath);
 
         return url;
@@ -0,0 +1,203 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/*
+ * Decodes the names and values of application/x-www-form-urlencoded
+ * data, from either a String or the raw bytes of a request body.
+ *
+ * '+' is decoded as a space and %xx escapes as bytes, which are then
+ * decoded with the charset given to the constructor, so that escaped
+ * multi-byte sequences such as UTF-8 come out as single characters.
+ * Hex digits are looked up in a table, and the bytes are collected in a
+ * buffer that is reused from one call to the next, so decoding does not
+ * allocate anything but the resulting String.
+ *
+ * Malformed input, a '%' not followed by two hex digits, is reported by
+ * returning null rather than by throwing, so that callers can decide
+ * whether it is an error.  A '%' with fewer than two characters left
+ * before the end of the input is kept as is, as HttpUtils always did.
+ *
+ * Instances are not safe for use by multiple threads.
+ */
+// package private
+final class PercentDecoder {
+
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX_VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUES['a' + i] = (byte) (10 + i);
+            HEX_VALUES['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    private final Charset charset;
+    private byte[] buf = new byte[64];
+
+    // package private
+    PercentDecoder(Charset charset) {
+        this.charset = charset;
+    }
+
+    // package private
+    Charset getCharset() {
+        return charset;
+    }
+
+    /*
+     * Returns the value of a hex digit, or -1 if c is not one.
+     */
+    // package private
+    static int hexValue(int c) {
+        return (c < 128 && c >= 0) ? HEX_VALUES[c] : -1;
+    }
+
+    /*
+     * Decodes s[start, end), or returns null if it contains a malformed
+     * escape.
+     */
+    // package private
+    String decode(CharSequence s, int start, int end) {
+        byte[] b = ensureCapacity(end - start);
+        int n = 0;
+        StringBuilder sb = null;
+
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '%') {
+                if (i + 2 >= end) {
+                    // truncated escape, keep the rest as is
+                    sb = flush(sb, n, end - start);
+                    n = 0;
+                    sb.append(s, i, end);
+                    break;
+                }
+                int hi = hexValue(s.charAt(i + 1));
+                int lo = hexValue(s.charAt(i + 2));
+                if ((hi | lo) < 0) {
+                    return null;
+                }
+                b[n++] = (byte) ((hi << 4) | lo);
+                i += 2;
+            } else if (c == '+') {
+                b[n++] = ' ';
+            } else if (c < 0x80) {
+                b[n++] = (byte) c;
+            } else {
+                // a character that is not ASCII, as String input may
+                // contain; decode what precedes it and keep it as is
+                sb = flush(sb, n, end - start);
+                n = 0;
+                sb.append(c);
+            }
+        }
+
+        if (sb == null) {
+            return new String(b, 0, n, charset);
+        }
+        return flush(sb, n, 0).toString();
+    }
+
+    /*
+     * Appends the first n bytes of the buffer, decoded, to sb, which is
+     * created with the given capacity if it is null.
+     */
+    private StringBuilder flush(StringBuilder sb, int n, int capacity) {
+        if (sb == null) {
+            sb = new StringBuilder(capacity);
+        }
+        if (n > 0) {
+            sb.append(new String(buf, 0, n, charset));
+        }
+        return sb;
+    }
+
+    /*
+     * Decodes the bytes b[start, end), or returns null if they contain
+     * a malformed escape.
+     */
+    // package private
+    String decode(byte[] in, int start, int end) {
+        byte[] b = ensureCapacity(end - start);
+        int n = 0;
+
+        for (int i = start; i < end; i++) {
+            byte c = in[i];
+            if (c == '%') {
+                if (i + 2 >= end) {
+                    // truncated escape, keep the rest as is
+                    while (i < end) {
+                        b[n++] = in[i++];
+                    }
+                    break;
+                }
+                int hi = hexValue(in[i + 1]);
+                int lo = hexValue(in[i + 2]);
+                if ((hi | lo) < 0) {
+                    return null;
+                }
+                b[n++] = (byte) ((hi << 4) | lo);
+                i += 2;
+            } else if (c == '+') {
+                b[n++] = ' ';
+            } else {
+                b[n++] = c;
+            }
+        }
+
+        return new String(b, 0, n, charset);
+    }
+
+    private byte[] ensureCapacity(int len) {
+        if (buf.length < len) {
+            buf = new byte[Math.max(len, buf.length * 2)];
+        }
+        return buf;
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>A parsed <i>application/x-www-form-urlencoded</i> query string.
+ * Parsing only records the offsets of each name and value in the
+ * original string; a name or value is decoded the first time it is
+ * asked for, and names are compared with the raw string when they
+ * contain no escapes.</p>
+ *
+ * <p>Pairs are separated by <code>&amp;</code>. A pair without
+ * <code>=</code> has an empty value, and empty pairs are ignored.
+ * <code>+</code> is decoded as a space and <code>%</code><i>xx</i>
+ * escapes as bytes in the charset given to the constructor.  An
+ * escape that is not followed by two hex digits makes the name or value
+ * it occurs in be returned undecoded.</p>
+ *
+ * <p>Instances are not safe for use by multiple threads.</p>
+ *
+ * @see HttpUtils#parseQueryString
+ *
+ * @since 4.0
+ */
+public final class QueryString {
+
+    // ints recorded per pair in offsets
+    private static final int NAME_START = 0;
+    private static final int NAME_END = 1;
+    private static final int VALUE_START = 2;
+    private static final int VALUE_END = 3;
+    private static final int FLAGS = 4;
+    private static final int FIELDS = 5;
+
+    // set in FLAGS if the name or value contains '%' or '+'
+    private static final int NAME_ESCAPED = 1;
+    private static final int VALUE_ESCAPED = 2;
+
+    private final String query;
+    private final Charset charset;
+    private final int[] offsets;
+    private final int count;
+
+    private String[] names;
+    private String[] values;
+    private Map<String, String[]> map;
+    private PercentDecoder decoder;
+
+    /**
+     * Parses a query string whose escapes encode UTF-8 bytes.
+     *
+     * @param query the query string, without the leading <code>?</code>
+     *
+     * @throws NullPointerException if <code>query</code> is null
+     */
+    public QueryString(String query) {
+        this(query, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a query string whose escapes encode bytes in the given
+     * charset.
+     *
+     * @param query the query string, without the leading <code>?</code>
+     * @param charset the charset of the escaped bytes
+     *
+     * @throws NullPointerException if <code>query</code> or
+     * <code>charset</code> is null
+     */
+    public QueryString(String query, Charset charset) {
+        if (charset == null) {
+            throw new NullPointerException();
+        }
+        this.query = query;
+        this.charset = charset;
+
+        int len = query.length();
+        int[] o = new int[FIELDS * 4];
+        int n = 0;
+        int pos = 0;
+        while (pos <= len) {
+            int nameStart = pos;
+            int eq = -1;
+            int flags = 0;
+            for (; pos < len; pos++) {
+                char c = query.charAt(pos);
+                if (c == '&') {
+                    break;
+                } else if (c == '=' && eq < 0) {
+                    eq = pos;
+                } else if (c == '%' || c == '+') {
+                    flags |= (eq < 0) ? NAME_ESCAPED : VALUE_ESCAPED;
+                }
+            }
+            if (pos > nameStart) {
+                if (o.length == n * FIELDS) {
+                    o = Arrays.copyOf(o, o.length * 2);
+                }
+                int base = n * FIELDS;
+                o[base + NAME_START] = nameStart;
+                o[base + NAME_END] = (eq < 0) ? pos : eq;
+                o[base + VALUE_START] = (eq < 0) ? pos : eq + 1;
+                o[base + VALUE_END] = pos;
+                o[base + FLAGS] = flags;
+                n++;
+            }
+            pos++;
+        }
+        this.offsets = o;
+        this.count = n;
+    }
+
+    /**
+     * Gets the number of name/value pairs, counting repeated names
+     * once per occurrence.
+     *
+     * @return the number of pairs
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Gets the decoded name of a pair.
+     *
+     * @param index the index of the pair, in the order of the query string
+     *
+     * @return the decoded name
+     *
+     * @throws IndexOutOfBoundsException if <code>index</code> is negative
+     * or not less than {@link #size}
+     */
+    public String getName(int index) {
+        checkIndex(index);
+        if (names == null) {
+            names = new String[count];
+        }
+        String name = names[index];
+        if (name == null) {
+            int base = index * FIELDS;
+            name = decode(offsets[base + NAME_START], offsets[base + NAME_END],
+                          (offsets[base + FLAGS] & NAME_ESCAPED) != 0);
+            names[index] = name;
+        }
+        return name;
+    }
+
+    /**
+     * Gets the decoded value of a pair.
+     *
+     * @param index the index of the pair, in the order of the query string
+     *
+     * @return the decoded value, which is empty if the pair has no
+     * <code>=</code>
+     *
+     * @throws IndexOutOfBoundsException if <code>index</code> is negative
+     * or not less than {@link #size}
+     */
+    public String getValue(int index) {
+        checkIndex(index);
+        if (values == null) {
+            values = new String[count];
+        }
+        String value = values[index];
+        if (value == null) {
+            int base = index * FIELDS;
+            value = decode(offsets[base + VALUE_START], offsets[base + VALUE_END],
+                           (offsets[base + FLAGS] & VALUE_ESCAPED) != 0);
+            values[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Gets the first value of a parameter, as
+     * {@link javax.servlet.ServletRequest#getParameter} does.
+     *
+     * @param name the decoded name of the parameter
+     *
+     * @return the first value, or <code>null</code> if the parameter
+     * does not occur
+     */
+    public String getParameter(String name) {
+        for (int i = 0; i < count; i++) {
+            if (nameEquals(i, name)) {
+                return getValue(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets all the values of a parameter, in the order of the query
+     * string, as {@link javax.servlet.ServletRequest#getParameterValues}
+     * does.
+     *
+     * @param name the decoded name of the parameter
+     *
+     * @return the values, or <code>null</code> if the parameter does
+     * not occur
+     */
+    public String[] getParameterValues(String name) {
+        int matches = 0;
+        int first = -1;
+        for (int i = 0; i < count; i++) {
+            if (nameEquals(i, name)) {
+                if (matches++ == 0) {
+                    first = i;
+                }
+            }
+        }
+        if (matches == 0) {
+            return null;
+        }
+        String[] result = new String[matches];
+        result[0] = getValue(first);
+        for (int i = first + 1, j = 1; j < matches; i++) {
+            if (nameEquals(i, name)) {
+                result[j++] = getValue(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets an unmodifiable view of the parameters as a map from each
+     * name to all its values, in the form returned by
+     * {@link javax.servlet.ServletRequest#getParameterMap}.  Lookups
+     * by name do not decode the other parameters; iterating over the
+     * map decodes all of them once.
+     *
+     * @return the parameter map
+     */
+    public Map<String, String[]> asMap() {
+        return new ParameterMap();
+    }
+
+    /**
+     * Returns the query string that was parsed.
+     *
+     * @return the query string
+     */
+    @Override
+    public String toString() {
+        return query;
+    }
+
+    private boolean nameEquals(int index, String name) {
+        int base = index * FIELDS;
+        if ((offsets[base + FLAGS] & NAME_ESCAPED) == 0) {
+            int start = offsets[base + NAME_START];
+            int len = offsets[base + NAME_END] - start;
+            return len == name.length()
+                && query.regionMatches(start, name, 0, len);
+        }
+        return getName(index).equals(name);
+    }
+
+    private String decode(int start, int end, boolean escaped) {
+        if (!escaped) {
+            return query.substring(start, end);
+        }
+        if (decoder == null) {
+            decoder = new PercentDecoder(charset);
+        }
+        String decoded = decoder.decode(query, start, end);
+        // keep malformed escapes as they were sent
+        return (decoded != null) ? decoded : query.substring(start, end);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+    }
+
+    private Map<String, String[]> groupedMap() {
+        if (map == null) {
+            // count the values of each name first, so that every
+            // array is allocated once with its final size
+            Map<String, int[]> tally = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                int[] t = tally.get(getName(i));
+                if (t == null) {
+                    t = new int[2];
+                    tally.put(getName(i), t);
+                }
+                t[0]++;
+            }
+            Map<String, String[]> m = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String name = getName(i);
+                int[] t = tally.get(name);
+                String[] v = m.get(name);
+                if (v == null) {
+                    v = new String[t[0]];
+                    m.put(name, v);
+                }
+                v[t[1]++] = getValue(i);
+            }
+            map = Collections.unmodifiableMap(m);
+        }
+        return map;
+    }
+
+    private class ParameterMap extends AbstractMap<String, String[]> {
+
+        @Override
+        public String[] get(Object key) {
+            return (key instanceof String)
+                ? getParameterValues((String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return (key instanceof String)
+                && getParameter((String) key) != null;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return count == 0;
+        }
+
+        @Override
+        public Set<Map.Entry<String, String[]>> entrySet() {
+            return (count == 0)
+                ? Collections.<Map.Entry<String, String[]>>emptySet()
+                : groupedMap().entrySet();
+        }
+    }
+}
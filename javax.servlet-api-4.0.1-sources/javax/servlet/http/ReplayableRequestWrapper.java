@@ -0,0 +1,735 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletInputStream;
+
+/**
+ * <p>A request wrapper whose body can be read more than once.  Every
+ * call to {@link #getInputStream} or {@link #getReader} returns a new
+ * stream positioned at the start of the body, so that filters can read
+ * the body, for example to verify a signature, before the servlet reads
+ * it again.</p>
+ *
+ * <p>The body is read from the wrapped request only as far as one of the
+ * streams has read it, and every byte is kept: the first
+ * <code>memoryThreshold</code> bytes in fixed-size chunks taken from a
+ * pool shared by all wrappers, and the rest in a temporary file in the
+ * directory given by the {@link ServletContext#TEMPDIR} context
+ * attribute.  {@link #release} returns the chunks to the pool and
+ * deletes the file, and should be called once the request has been
+ * processed:</p>
+ *
+ * <pre><code>
+ *    ReplayableRequestWrapper replayable = new ReplayableRequestWrapper(req);
+ *    try {
+ *        verify(replayable.getInputStream());
+ *        chain.doFilter(replayable, res);
+ *    } finally {
+ *        replayable.release();
+ *    }
+ * </code></pre>
+ *
+ * <p>The parameter methods include the parameters of an
+ * <i>application/x-www-form-urlencoded</i> <code>POST</code> body, which
+ * is read completely when a parameter is first asked for, after the
+ * parameters of the wrapped request.  The body is decoded with the
+ * character encoding of the request, or ISO-8859-1 if it has none.
+ * Since these methods cannot throw an <code>IOException</code>, one that
+ * occurs while reading the body is thrown wrapped in an
+ * <code>IllegalStateException</code>.</p>
+ *
+ * <p>The streams support {@link ReadListener}, through the listener
+ * machinery of the wrapped input stream, so that listeners are only
+ * called by the container, one at a time.  The first listener given to
+ * a stream is set on the wrapped input stream, even if the body has
+ * already been read, and the notifications of the wrapped input stream
+ * are passed on to the listener of the stream that was last given one.
+ * Since the wrapped input stream only takes one listener, the listener
+ * of any other stream must be set while a listener is being notified,
+ * and is first notified once that listener returns.</p>
+ *
+ * <p>Instances are not safe for use by multiple threads.</p>
+ *
+ * @since 4.0
+ */
+public class ReplayableRequestWrapper extends HttpServletRequestWrapper {
+
+    private static final String LSTRING_FILE =
+        "javax.servlet.http.LocalStrings";
+    private static final ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+
+    /** The number of bytes kept in memory unless specified otherwise. */
+    public static final int DEFAULT_MEMORY_THRESHOLD = 64 * 1024;
+
+    private static final String FORM_CONTENT_TYPE =
+        "application/x-www-form-urlencoded";
+
+    private static final int CHUNK_SIZE = 8192;
+
+    // the largest number of chunks kept in the pool
+    private static final int MAX_POOLED_CHUNKS = 256;
+
+    // the chunks released by the wrappers, to be taken by the next ones
+    private static final ConcurrentLinkedQueue<byte[]> pool =
+        new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    private final int memoryThreshold;
+    private final long maxSize;
+
+    // the input stream of the wrapped request, once it has been obtained
+    private ServletInputStream source;
+
+    // the first memoryThreshold bytes of the body
+    private final List<byte[]> chunks = new ArrayList<>();
+
+    // the rest, and a buffer to copy it through
+    private FileChannel spill;
+    private byte[] spillBuffer;
+
+    // the number of bytes kept, and whether they are the whole body
+    private long size;
+    private boolean complete;
+    private boolean released;
+
+    // notified by the wrapped input stream, and the stream it notifies
+    private SourceListener sourceListener;
+    private ReplayInputStream listening;
+    // whether a listener is being notified, and the stream whose listener
+    // is to be notified once it returns
+    private boolean notifying;
+    private ReplayInputStream pending;
+
+    private Map<String, String[]> parameters;
+
+    /**
+     * Constructs a wrapper that keeps up to
+     * {@link #DEFAULT_MEMORY_THRESHOLD} bytes of the body in memory, and
+     * does not limit its size.
+     *
+     * @param request the {@link HttpServletRequest} to be wrapped
+     *
+     * @throws IllegalArgumentException if the request is null
+     */
+    public ReplayableRequestWrapper(HttpServletRequest request) {
+        this(request, DEFAULT_MEMORY_THRESHOLD, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a wrapper.
+     *
+     * @param request the {@link HttpServletRequest} to be wrapped
+     * @param memoryThreshold the number of bytes of the body kept in
+     * memory; the rest is written to a temporary file
+     * @param maxSize the largest body accepted, in bytes; reading a longer
+     * body fails with an <code>IOException</code>
+     *
+     * @throws IllegalArgumentException if the request is null, or a size
+     * is negative
+     */
+    public ReplayableRequestWrapper(HttpServletRequest request,
+                                    int memoryThreshold, long maxSize) {
+        super(request);
+        if (memoryThreshold < 0 || maxSize < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.memoryThreshold = memoryThreshold;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns a new input stream that reads the body from its start.
+     *
+     * @return a {@link ServletInputStream} over the body
+     *
+     * @throws IOException if the input stream of the wrapped request
+     * cannot be obtained
+     */
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        checkReleased();
+        return new ReplayInputStream();
+    }
+
+    /**
+     * Returns a new reader that reads the body from its start, decoded
+     * with the character encoding of the request, or ISO-8859-1 if it
+     * has none.
+     *
+     * @return a <code>BufferedReader</code> over the body
+     *
+     * @throws UnsupportedEncodingException if the character encoding of
+     * the request is not supported
+     * @throws IOException if the input stream of the wrapped request
+     * cannot be obtained
+     */
+    @Override
+    public BufferedReader getReader() throws IOException {
+        return new BufferedReader(
+            new InputStreamReader(getInputStream(), getCharset()));
+    }
+
+    /**
+     * Reads the rest of the body from the wrapped request, in blocking
+     * mode.
+     *
+     * @return the size of the body in bytes
+     *
+     * @throws IOException if the body cannot be read, or is longer than
+     * the maximum size
+     */
+    public long capture() throws IOException {
+        checkReleased();
+        while (fill() >= 0) {
+            // keep reading
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes of the body read from the wrapped
+     * request so far.
+     *
+     * @return the number of bytes kept
+     */
+    public long getCapturedSize() {
+        return size;
+    }
+
+    /**
+     * Returns the pooled chunks holding the body, and deletes the file
+     * holding the rest of it.  The body cannot be read afterwards.
+     */
+    public void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        releaseChunks(chunks);
+        if (spill != null) {
+            try {
+                // the file is deleted when it is closed
+                spill.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            spill = null;
+        }
+    }
+
+    /**
+     * The default behavior of this method is to return getParameter(String name)
+     * on the wrapped request object, followed by the parameters of a form
+     * body.
+     *
+     * @throws IllegalStateException if the form body cannot be read, for
+     * example because it is larger than the maximum size
+     */
+    @Override
+    public String getParameter(String name) {
+        Map<String, String[]> map = getFormParameters();
+        if (map == null) {
+            return super.getParameter(name);
+        }
+        String[] values = map.get(name);
+        return (values == null) ? null : values[0];
+    }
+
+    /**
+     * The default behavior of this method is to return getParameterMap()
+     * on the wrapped request object, followed by the parameters of a form
+     * body.
+     *
+     * @throws IllegalStateException if the form body cannot be read, for
+     * example because it is larger than the maximum size
+     */
+    @Override
+    public Map<String, String[]> getParameterMap() {
+        Map<String, String[]> map = getFormParameters();
+        return (map == null) ? super.getParameterMap() : map;
+    }
+
+    /**
+     * The default behavior of this method is to return getParameterNames()
+     * on the wrapped request object, followed by the parameters of a form
+     * body.
+     *
+     * @throws IllegalStateException if the form body cannot be read, for
+     * example because it is larger than the maximum size
+     */
+    @Override
+    public Enumeration<String> getParameterNames() {
+        Map<String, String[]> map = getFormParameters();
+        return (map == null) ? super.getParameterNames()
+                             : Collections.enumeration(map.keySet());
+    }
+
+    /**
+     * The default behavior of this method is to return getParameterValues(String name)
+     * on the wrapped request object, followed by the parameters of a form
+     * body.
+     *
+     * @throws IllegalStateException if the form body cannot be read, for
+     * example because it is larger than the maximum size
+     */
+    @Override
+    public String[] getParameterValues(String name) {
+        Map<String, String[]> map = getFormParameters();
+        if (map == null) {
+            return super.getParameterValues(name);
+        }
+        String[] values = map.get(name);
+        return (values == null) ? null : values.clone();
+    }
+
+    /*
+     * Returns the parameters of the wrapped request followed by those of
+     * the body, or null if the body is not a form.
+     */
+    private Map<String, String[]> getFormParameters() {
+        if (parameters == null) {
+            if (!isFormBody()) {
+                return null;
+            }
+            // the wrapped request has not read the body, since its
+            // stream has been or is about to be obtained by capture()
+            Map<String, List<String>> values = new LinkedHashMap<>();
+            try {
+                capture();
+                for (Map.Entry<String, String[]> e : super.getParameterMap().entrySet()) {
+                    List<String> list = new ArrayList<>(e.getValue().length + 1);
+                    Collections.addAll(list, e.getValue());
+                    values.put(e.getKey(), list);
+                }
+                FormDataParser parser = new FormDataParser(getCharset(),
+                    Integer.MAX_VALUE, Integer.MAX_VALUE,
+                    (name, value) -> values.computeIfAbsent(name,
+                        k -> new ArrayList<>(1)).add(value));
+                byte[] b = new byte[CHUNK_SIZE];
+                for (long pos = 0; pos < size; ) {
+                    int n = readAt(pos, b, 0, (int) Math.min(b.length, size - pos));
+                    parser.update(b, 0, n);
+                    pos += n;
+                }
+                parser.finish();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            Map<String, String[]> map = new LinkedHashMap<>(values.size() * 2);
+            for (Map.Entry<String, List<String>> e : values.entrySet()) {
+                List<String> list = e.getValue();
+                map.put(e.getKey(), list.toArray(new String[list.size()]));
+            }
+            parameters = Collections.unmodifiableMap(map);
+        }
+        return parameters;
+    }
+
+    private boolean isFormBody() {
+        if (!"POST".equals(getMethod())) {
+            return false;
+        }
+        String type = getContentType();
+        int len = FORM_CONTENT_TYPE.length();
+        if (type == null
+                || !type.regionMatches(true, 0, FORM_CONTENT_TYPE, 0, len)) {
+            return false;
+        }
+        if (type.length() == len) {
+            return true;
+        }
+        char c = type.charAt(len);
+        return c == ';' || c == ' ' || c == '\t';
+    }
+
+    private Charset getCharset() throws UnsupportedEncodingException {
+        String enc = getCharacterEncoding();
+        if (enc == null) {
+            return StandardCharsets.ISO_8859_1;
+        }
+        try {
+            return Charset.forName(enc);
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+            throw new UnsupportedEncodingException(enc);
+        }
+    }
+
+    private static byte[] takeChunk() {
+        byte[] c = pool.poll();
+        if (c == null) {
+            return new byte[CHUNK_SIZE];
+        }
+        pooled.decrementAndGet();
+        return c;
+    }
+
+    private static void releaseChunks(List<byte[]> released) {
+        for (byte[] c : released) {
+            if (pooled.incrementAndGet() <= MAX_POOLED_CHUNKS) {
+                pool.offer(c);
+            } else {
+                pooled.decrementAndGet();
+            }
+        }
+        released.clear();
+    }
+
+    private ServletInputStream source() throws IOException {
+        if (source == null) {
+            source = super.getInputStream();
+        }
+        return source;
+    }
+
+    /*
+     * Reads the next bytes of the body from the wrapped request and keeps
+     * them.  Returns the number of bytes read, which is zero only if the
+     * wrapped stream is not ready, or -1 at the end of the body.
+     */
+    private int fill() throws IOException {
+        checkReleased();
+        if (complete) {
+            return -1;
+        }
+        if (size > maxSize) {
+            throw tooLarge();
+        }
+        ServletInputStream in = source();
+        int n;
+        if (size < memoryThreshold) {
+            int index = (int) (size / CHUNK_SIZE);
+            int pos = (int) (size % CHUNK_SIZE);
+            if (index == chunks.size()) {
+                chunks.add(takeChunk());
+            }
+            int len = Math.min(CHUNK_SIZE - pos, memoryThreshold - (int) size);
+            n = in.read(chunks.get(index), pos, len);
+        } else {
+            if (spillBuffer == null) {
+                spillBuffer = new byte[CHUNK_SIZE];
+            }
+            n = in.read(spillBuffer, 0, spillBuffer.length);
+            if (n > 0) {
+                ByteBuffer bb = ByteBuffer.wrap(spillBuffer, 0, n);
+                long pos = size - memoryThreshold;
+                FileChannel channel = spillChannel();
+                while (bb.hasRemaining()) {
+                    pos += channel.write(bb, pos);
+                }
+            }
+        }
+        if (n < 0) {
+            complete = true;
+            return -1;
+        }
+        size += n;
+        if (size > maxSize) {
+            throw tooLarge();
+        }
+        return n;
+    }
+
+    private FileChannel spillChannel() throws IOException {
+        if (spill == null) {
+            ServletContext context = getServletContext();
+            Object dir = (context == null)
+                ? null : context.getAttribute(ServletContext.TEMPDIR);
+            Path file = (dir instanceof File)
+                ? Files.createTempFile(((File) dir).toPath(), "request", ".body")
+                : Files.createTempFile("request", ".body");
+            spill = FileChannel.open(file, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        return spill;
+    }
+
+    /*
+     * Copies kept bytes, starting at the given position of the body, and
+     * returns the number of bytes copied, which is len unless the end of
+     * the kept bytes is reached.
+     */
+    private int readAt(long pos, byte[] b, int off, int len) throws IOException {
+        checkReleased();
+        len = (int) Math.min(len, size - pos);
+        int copied = 0;
+        while (copied < len && pos < memoryThreshold) {
+            int index = (int) (pos / CHUNK_SIZE);
+            int chunkPos = (int) (pos % CHUNK_SIZE);
+            int n = Math.min(len - copied, CHUNK_SIZE - chunkPos);
+            n = (int) Math.min(n, memoryThreshold - pos);
+            System.arraycopy(chunks.get(index), chunkPos, b, off + copied, n);
+            copied += n;
+            pos += n;
+        }
+        if (copied < len) {
+            ByteBuffer bb = ByteBuffer.wrap(b, off + copied, len - copied);
+            long filePos = pos - memoryThreshold;
+            while (bb.hasRemaining()) {
+                int n = spill.read(bb, filePos);
+                if (n < 0) {
+                    break;
+                }
+                filePos += n;
+            }
+            copied = len - bb.remaining();
+        }
+        return copied;
+    }
+
+    private void checkReleased() {
+        if (released) {
+            throw new IllegalStateException(
+                lStrings.getString("err.io.bodyReleased"));
+        }
+    }
+
+    private IOException tooLarge() {
+        String msg = lStrings.getString("err.io.bodyTooLarge");
+        Object[] msgArgs = new Object[1];
+        msgArgs[0] = Long.valueOf(maxSize);
+        return new IOException(MessageFormat.format(msg, msgArgs));
+    }
+
+
+    /*
+     * A stream over the body, which reads kept bytes first and then reads
+     * and keeps more of the body.
+     */
+    private class ReplayInputStream extends ServletInputStream {
+
+        private final byte[] single = new byte[1];
+        private long pos;
+        // the position reset() returns to, as for ByteArrayInputStream
+        private long markPos;
+        private ReadListener listener;
+        private boolean allDataRead;
+
+        @Override
+        public int read() throws IOException {
+            int n = read(single, 0, 1);
+            if (n == 0) {
+                // only a non-blocking wrapped stream reads nothing, and it
+                // must not be read until it is ready
+                throw new IllegalStateException();
+            }
+            return (n < 0) ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (pos == size) {
+                int n = fill();
+                if (n <= 0) {
+                    return n;
+                }
+            }
+            int n = readAt(pos, b, off, len);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long kept = Math.min(n, size - pos);
+            if (kept <= 0) {
+                return super.skip(n);
+            }
+            pos += kept;
+            return kept;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(Integer.MAX_VALUE, size - pos);
+        }
+
+        // every byte of the body is kept, so readLine reads in bulk
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int readlimit) {
+            markPos = pos;
+        }
+
+        @Override
+        public void reset() {
+            pos = markPos;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return complete && pos == size;
+        }
+
+        @Override
+        public boolean isReady() {
+            if (pos < size || complete) {
+                return true;
+            }
+            try {
+                return source().isReady();
+            } catch (IOException e) {
+                // reading will fail too
+                return true;
+            }
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            if (readListener == null) {
+                throw new NullPointerException();
+            }
+            if (listener != null || !isAsyncStarted()
+                    || (sourceListener != null && !notifying)) {
+                throw new IllegalStateException();
+            }
+            listener = readListener;
+            listening = this;
+            if (sourceListener != null) {
+                // notified by the thread notifying the current listener
+                pending = this;
+                return;
+            }
+            // the wrapped stream notifies us as soon as it can, or that
+            // all data has been read if it has
+            sourceListener = new SourceListener();
+            try {
+                source().setReadListener(sourceListener);
+            } catch (IOException e) {
+                listener.onError(e);
+            }
+        }
+
+        /*
+         * Notifies the listener that data can be read, and that all of
+         * it has been read once the stream is finished.
+         */
+        private void notifyListener() throws IOException {
+            if (!isFinished()) {
+                listener.onDataAvailable();
+            }
+            if (isFinished() && !allDataRead) {
+                allDataRead = true;
+                listener.onAllDataRead();
+            }
+        }
+    }
+
+
+    /*
+     * Passes the notifications of the wrapped input stream on to the
+     * stream that was last given a listener.
+     */
+    private class SourceListener implements ReadListener {
+
+        @Override
+        public void onDataAvailable() throws IOException {
+            notifyListeners();
+        }
+
+        @Override
+        public void onAllDataRead() throws IOException {
+            complete = true;
+            notifyListeners();
+        }
+
+        /*
+         * Notifies the listening stream, then those given a listener
+         * meanwhile, on the thread the container notifies us with.
+         */
+        private void notifyListeners() throws IOException {
+            notifying = true;
+            try {
+                listening.notifyListener();
+                while (pending != null) {
+                    ReplayInputStream s = pending;
+                    pending = null;
+                    s.notifyListener();
+                }
+            } finally {
+                notifying = false;
+                pending = null;
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            listening.listener.onError(t);
+        }
+    }
+}
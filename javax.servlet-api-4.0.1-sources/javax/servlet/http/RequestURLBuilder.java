@@ -0,0 +1,211 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.ServletContext;
+
+/**
+ * <p>Builds the URL a client used to make a request, as returned by
+ * {@link HttpServletRequest#getRequestURL}, into a
+ * <code>StringBuilder</code> supplied by the caller.</p>
+ *
+ * <p>The <code>scheme://host[:port]</code> prefix of a URL only depends
+ * on the connector and virtual host a request was received on, so it is
+ * built once for each combination and cached for the
+ * {@link ServletContext} of the request, until the context is garbage
+ * collected.  Looking a prefix up does not allocate, which makes this class suitable for code that generates
+ * many links per request.</p>
+ *
+ * <p>Since the host name comes from the <code>Host</code> header, which
+ * the client chooses, each web application caches the prefixes of at
+ * most 256 host names: those first seen stay cached, and the prefixes
+ * of other host names are built for every request.</p>
+ *
+ * @see HttpUtils#getRequestURL
+ *
+ * @since 4.0
+ */
+public final class RequestURLBuilder {
+
+    // the number of host names cached for each context, since the Host
+    // header is chosen by the client
+    private static final int MAX_HOSTS = 256;
+
+    // the prefixes of each web application, which do not refer to its
+    // context so that it can be collected; guarded by itself
+    private static final Map<ServletContext, PrefixCache> caches =
+        new WeakHashMap<>();
+
+    private RequestURLBuilder() { }
+
+    /**
+     * Appends the URL of a request, without its query string, to a
+     * <code>StringBuilder</code>.
+     *
+     * @param req the request
+     * @param sb  the builder to append to
+     *
+     * @return <code>sb</code>
+     */
+    public static StringBuilder appendRequestURL(HttpServletRequest req,
+                                                 StringBuilder sb) {
+        return sb.append(getPrefix(req)).append(req.getRequestURI());
+    }
+
+    /**
+     * Appends the <code>scheme://host[:port]</code> prefix of the URL of
+     * a request to a <code>StringBuilder</code>. The port is omitted if
+     * it is the default port of the <code>http</code> or
+     * <code>https</code> scheme.
+     *
+     * @param req the request
+     * @param sb  the builder to append to
+     *
+     * @return <code>sb</code>
+     */
+    public static StringBuilder appendPrefix(HttpServletRequest req,
+                                             StringBuilder sb) {
+        return sb.append(getPrefix(req));
+    }
+
+    /**
+     * Returns the URL of a request, without its query string.
+     *
+     * @param req the request
+     *
+     * @return the URL of the request
+     */
+    public static String getRequestURL(HttpServletRequest req) {
+        String prefix = getPrefix(req);
+        String uri = req.getRequestURI();
+        return new StringBuilder(prefix.length() + uri.length())
+            .append(prefix).append(uri).toString();
+    }
+
+    /**
+     * Returns the <code>scheme://host[:port]</code> prefix of the URL of
+     * a request.
+     *
+     * @param req the request
+     *
+     * @return the prefix, which is shared by all requests received with
+     * the same scheme, server name and port
+     */
+    public static String getPrefix(HttpServletRequest req) {
+        String scheme = req.getScheme();
+        String host = req.getServerName();
+        int port = req.getServerPort();
+
+        PrefixCache cache = getCache(req);
+        if (cache == null) {
+            return new Prefix(scheme, host, port).value;
+        }
+        ConcurrentHashMap<String, Prefix[]> prefixes = cache.prefixes;
+        Prefix[] cached = prefixes.get(host);
+        if (cached != null) {
+            for (Prefix p : cached) {
+                if (p.port == port && p.scheme.equals(scheme)) {
+                    return p.value;
+                }
+            }
+        }
+
+        Prefix p = new Prefix(scheme, host, port);
+        if (cached == null && prefixes.size() >= MAX_HOSTS) {
+            // keep the host names already cached
+            return p.value;
+        }
+        prefixes.merge(host, new Prefix[] { p }, (existing, added) -> {
+            Prefix[] merged = new Prefix[existing.length + 1];
+            System.arraycopy(existing, 0, merged, 0, existing.length);
+            merged[existing.length] = added[0];
+            return merged;
+        });
+        return p.value;
+    }
+
+    /*
+     * Returns the prefixes cached for the context of a request, or null
+     * if the request has no context.
+     */
+    private static PrefixCache getCache(HttpServletRequest req) {
+        ServletContext context = req.getServletContext();
+        if (context == null) {
+            return null;
+        }
+        synchronized (caches) {
+            return caches.computeIfAbsent(context, c -> new PrefixCache());
+        }
+    }
+
+    private static final class PrefixCache {
+
+        final ConcurrentHashMap<String, Prefix[]> prefixes =
+            new ConcurrentHashMap<>();
+    }
+
+    private static final class Prefix {
+
+        final String scheme;
+        final int port;
+        final String value;
+
+        Prefix(String scheme, String host, int port) {
+            this.scheme = scheme;
+            this.port = port;
+
+            StringBuilder sb = new StringBuilder(scheme.length()
+                + host.length() + 9);
+            sb.append(scheme);              // http, https
+            sb.append("://");
+            sb.append(host);
+            if ((scheme.equals("http") && port != 80)
+                    || (scheme.equals("https") && port != 443)) {
+                sb.append(':');
+                sb.append(port);
+            }
+            this.value = sb.toString();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+/**
+ * <p>Describes the headers of the response to a GET request without
+ * its body: the content length and type and the validators of the
+ * representation.  Instances are immutable and are returned from
+ * {@link HttpServlet#getResponseMetadata} to answer HEAD requests
+ * without generating the body.</p>
+ *
+ * @since 4.0
+ */
+public class ResponseMetadata {
+
+    private final long contentLength;
+    private final String contentType;
+    private final String eTag;
+    private final long lastModified;
+
+    /**
+     * Constructs an instance with the given headers.
+     *
+     * @param contentLength the length of the response body in bytes,
+     *                      or -1 if it is not known
+     * @param contentType   the content type of the response, or
+     *                      <code>null</code> if it is not known
+     * @param eTag          the entity tag of the representation, as
+     *                      described in {@link HttpServlet#getETag},
+     *                      or <code>null</code> if there is none
+     * @param lastModified  the time the representation was last
+     *                      modified, in milliseconds since midnight
+     *                      January 1, 1970 GMT, or -1 if it is not known
+     */
+    public ResponseMetadata(long contentLength, String contentType,
+                            String eTag, long lastModified) {
+        this.contentLength = contentLength;
+        this.contentType = contentType;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Gets the length of the response body.
+     *
+     * @return the length of the response body in bytes, or -1 if it
+     * is not known
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Gets the content type of the response.
+     *
+     * @return the content type, or <code>null</code> if it is not known
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Gets the entity tag of the representation.
+     *
+     * @return the entity tag, or <code>null</code> if there is none
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * Gets the time the representation was last modified.
+     *
+     * @return the time in milliseconds since midnight January 1, 1970
+     * GMT, or -1 if it is not known
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+}
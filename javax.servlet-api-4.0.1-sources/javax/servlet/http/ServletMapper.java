@@ -0,0 +1,475 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.Set;
+
+/**
+ * Maps request paths to servlets by the URL patterns of their mappings,
+ * following the rules of the Servlet specification.
+ *
+ * <p>Patterns are added as they are to a
+ * {@link javax.servlet.ServletRegistration}, and compiled on the first
+ * lookup that follows a change.  Exact and path prefix patterns are
+ * kept in a trie of path segments, in which a lookup walks the segments
+ * of the path once, remembering the longest prefix it has seen, and
+ * extension patterns in a hash table.  Neither is searched by creating
+ * substrings of the path.</p>
+ *
+ * <p>The returned {@link HttpServletMapping} objects are immutable.  The
+ * mappings of exact, context root and default matches, and of a path
+ * equal to the prefix of a path mapping, are created once, when the
+ * patterns are compiled, and returned by every lookup that yields them;
+ * only the mappings of other path and extension matches, whose match
+ * value depends on the path, are created per lookup.</p>
+ *
+ * <p>This class is safe for use by multiple threads.</p>
+ *
+ * @see MappingMatch
+ *
+ * @since Servlet 4.0
+ */
+public final class ServletMapper {
+
+    private static final String LSTRING_FILE = "javax.servlet.http.LocalStrings";
+    private static final ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+
+    // servlet names by pattern, in the order they were added
+    private final Map<String, String> patterns = new LinkedHashMap<>();
+
+    // null when the patterns have changed since they were compiled
+    private volatile Compiled compiled;
+
+    /**
+     * Constructs a mapper without mappings.
+     */
+    public ServletMapper() { }
+
+    /**
+     * Adds a servlet mapping with the given URL patterns.  If any of
+     * them is already mapped to a different servlet, nothing is added.
+     * See {@link javax.servlet.ServletRegistration#addMapping}.
+     *
+     * @param servletName the name of the servlet that is mapped
+     * @param urlPatterns the URL patterns of the servlet mapping
+     *
+     * @return the (possibly empty) Set of URL patterns that are already
+     * mapped to a different servlet
+     *
+     * @throws IllegalArgumentException if <tt>urlPatterns</tt> is null
+     * or empty, or one of them is not a valid URL pattern
+     */
+    public synchronized Set<String> addMapping(String servletName,
+                                               String... urlPatterns) {
+        if (servletName == null) {
+            throw new NullPointerException();
+        }
+        if (urlPatterns == null || urlPatterns.length == 0) {
+            throw new IllegalArgumentException();
+        }
+        Set<String> conflicts = new LinkedHashSet<>();
+        for (String p : urlPatterns) {
+            if (!isValidPattern(p)) {
+                String msg = lStrings.getString("err.mapping.invalidUrlPattern");
+                Object[] msgArgs = new Object[1];
+                msgArgs[0] = p;
+                throw new IllegalArgumentException(MessageFormat.format(msg, msgArgs));
+            }
+            String mapped = patterns.get(p);
+            if (mapped != null && !mapped.equals(servletName)) {
+                conflicts.add(p);
+            }
+        }
+        if (conflicts.isEmpty()) {
+            for (String p : urlPatterns) {
+                patterns.put(p, servletName);
+            }
+            compiled = null;
+        }
+        return conflicts;
+    }
+
+    /**
+     * Removes all the mappings of a servlet.
+     *
+     * @param servletName the name of the servlet whose mappings are
+     * removed
+     *
+     * @return <code>true</code> if the servlet had mappings
+     */
+    public synchronized boolean removeMappings(String servletName) {
+        boolean removed = false;
+        for (Iterator<String> it = patterns.values().iterator(); it.hasNext();) {
+            if (it.next().equals(servletName)) {
+                it.remove();
+                removed = true;
+            }
+        }
+        if (removed) {
+            compiled = null;
+        }
+        return removed;
+    }
+
+    /**
+     * Gets the URL patterns mapped to a servlet.
+     *
+     * @param servletName the name of the servlet
+     *
+     * @return a (possibly empty) Set of the URL patterns of the servlet,
+     * which is not backed by this mapper
+     */
+    public synchronized Set<String> getMappings(String servletName) {
+        Set<String> result = new LinkedHashSet<>();
+        for (Map.Entry<String, String> e : patterns.entrySet()) {
+            if (e.getValue().equals(servletName)) {
+                result.add(e.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Maps a request path to a servlet.  The path is the part of the
+     * request URI that follows the context path, decoded and
+     * normalized, without the path parameters and the query string.
+     *
+     * <p>A path that is empty or <code>/</code> matches the context root
+     * pattern, the empty string, if there is one.  Otherwise the
+     * servlet is the one mapped to the path exactly, or else to the
+     * longest path prefix of the path, or else to the extension of its
+     * last segment, or else the default servlet, mapped to
+     * <code>/</code>.</p>
+     *
+     * @param path the request path within the context
+     *
+     * @return the mapping that matched, or <code>null</code> if no
+     * pattern matches the path
+     */
+    public HttpServletMapping map(String path) {
+        Compiled c = compiled;
+        if (c == null) {
+            c = compile();
+        }
+        int len = path.length();
+        if (len == 0 || (len == 1 && path.charAt(0) == '/')) {
+            HttpServletMapping m = c.contextRoot;
+            if (m != null) {
+                return m;
+            }
+        }
+
+        // walk the trie segment by segment; the root stands for the
+        // empty path, so a path that does not start with '/' only
+        // matches "/*"
+        MappingNode node = c.root;
+        MappingNode longest = node.prefix != null ? node : null;
+        int longestEnd = 0;
+        int pos = 0;
+        if (len > 0 && path.charAt(0) == '/') {
+            while (pos < len && node != null) {
+                int start = pos + 1;
+                int end = path.indexOf('/', start);
+                if (end < 0) {
+                    end = len;
+                }
+                node = node.child(path, start, end);
+                pos = end;
+                if (node != null && node.prefix != null) {
+                    longest = node;
+                    longestEnd = end;
+                }
+            }
+            if (node != null && node.exact != null) {
+                return node.exact;
+            }
+        }
+        if (longest != null) {
+            if (longestEnd + 1 >= len) {
+                return longest.prefix;
+            }
+            HttpServletMapping m = longest.prefix;
+            return new ImmutableMapping(MappingMatch.PATH,
+                path.substring(longestEnd + 1), m.getPattern(),
+                m.getServletName());
+        }
+
+        if (c.extensions != null) {
+            int slash = path.lastIndexOf('/');
+            int period = path.lastIndexOf('.');
+            if (period > slash) {
+                HttpServletMapping m = c.extensions.get(path, period + 1, len);
+                if (m != null) {
+                    // the match value is the servlet path without its
+                    // leading '/' and its extension
+                    return new ImmutableMapping(MappingMatch.EXTENSION,
+                        path.substring(slash >= 0 ? 1 : 0, period),
+                        m.getPattern(), m.getServletName());
+                }
+            }
+        }
+
+        return c.defaultMapping;
+    }
+
+    private synchronized Compiled compile() {
+        Compiled c = compiled;
+        if (c != null) {
+            return c;
+        }
+        MappingNode r = new MappingNode();
+        HttpServletMapping ctx = null;
+        HttpServletMapping def = null;
+        Map<String, HttpServletMapping> ext = new HashMap<>();
+        for (Map.Entry<String, String> e : patterns.entrySet()) {
+            String p = e.getKey();
+            String name = e.getValue();
+            if (p.isEmpty()) {
+                ctx = new ImmutableMapping(MappingMatch.CONTEXT_ROOT, "", "", name);
+            } else if (p.equals("/")) {
+                def = new ImmutableMapping(MappingMatch.DEFAULT, "", "/", name);
+            } else if (p.startsWith("*.")) {
+                ext.put(p.substring(2),
+                        new ImmutableMapping(MappingMatch.EXTENSION, "", p, name));
+            } else if (p.endsWith("/*")) {
+                MappingNode n = r.add(p, p.length() - 2);
+                n.prefix = new ImmutableMapping(MappingMatch.PATH, "", p, name);
+            } else {
+                MappingNode n = r.add(p, p.length());
+                n.exact = new ImmutableMapping(MappingMatch.EXACT, p.substring(1),
+                                               p, name);
+            }
+        }
+        r.freeze();
+        c = new Compiled(r, ctx, def,
+                         ext.isEmpty() ? null : new SegmentTable<>(ext));
+        compiled = c;
+        return c;
+    }
+
+    private static boolean isValidPattern(String pattern) {
+        if (pattern == null) {
+            return false;
+        }
+        if (pattern.startsWith("*.")) {
+            return pattern.length() > 2 && pattern.indexOf('/') < 0;
+        }
+        return pattern.isEmpty() || pattern.charAt(0) == '/';
+    }
+
+
+    /*
+     * The patterns compiled for lookups, replaced as a whole when they
+     * change.
+     */
+    private static final class Compiled {
+
+        final MappingNode root;
+        final HttpServletMapping contextRoot;
+        final HttpServletMapping defaultMapping;
+        final SegmentTable<HttpServletMapping> extensions;
+
+        Compiled(MappingNode root, HttpServletMapping contextRoot,
+                 HttpServletMapping defaultMapping,
+                 SegmentTable<HttpServletMapping> extensions) {
+            this.root = root;
+            this.contextRoot = contextRoot;
+            this.defaultMapping = defaultMapping;
+            this.extensions = extensions;
+        }
+    }
+}
+
+
+// file private
+final class MappingNode {
+
+    private static final SegmentTable<MappingNode> NO_CHILDREN =
+        new SegmentTable<>(Collections.<String, MappingNode>emptyMap());
+
+    HttpServletMapping exact;
+    HttpServletMapping prefix;
+
+    private Map<String, MappingNode> building = new HashMap<>();
+    private SegmentTable<MappingNode> children;
+
+    /*
+     * Returns the node of the path p[0, end), which starts with '/',
+     * adding the nodes of its segments that are missing.
+     */
+    MappingNode add(String p, int end) {
+        MappingNode node = this;
+        int pos = 0;
+        while (pos < end) {
+            int start = pos + 1;
+            int next = p.indexOf('/', start);
+            if (next < 0 || next > end) {
+                next = end;
+            }
+            String segment = p.substring(start, next);
+            MappingNode child = node.building.get(segment);
+            if (child == null) {
+                child = new MappingNode();
+                node.building.put(segment, child);
+            }
+            node = child;
+            pos = next;
+        }
+        return node;
+    }
+
+    void freeze() {
+        for (MappingNode child : building.values()) {
+            child.freeze();
+        }
+        children = building.isEmpty() ? NO_CHILDREN : new SegmentTable<>(building);
+        building = null;
+    }
+
+    MappingNode child(String s, int start, int end) {
+        return children.get(s, start, end);
+    }
+}
+
+
+// file private
+final class SegmentTable<V> {
+
+    private final String[] keys;
+    private final Object[] values;
+    private final int mask;
+
+    SegmentTable(Map<String, V> map) {
+        int capacity = Integer.highestOneBit(Math.max(1, map.size()) * 2 - 1) * 2;
+        keys = new String[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        for (Map.Entry<String, V> e : map.entrySet()) {
+            String k = e.getKey();
+            int i = spread(k.hashCode()) & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = k;
+            values[i] = e.getValue();
+        }
+    }
+
+    /*
+     * Looks up the key equal to s[start, end), hashing the characters in
+     * place as String.hashCode does.
+     */
+    @SuppressWarnings("unchecked")
+    V get(String s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        int len = end - start;
+        for (int i = spread(h) & mask; ; i = (i + 1) & mask) {
+            String k = keys[i];
+            if (k == null) {
+                return null;
+            }
+            if (k.length() == len && s.regionMatches(start, k, 0, len)) {
+                return (V) values[i];
+            }
+        }
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+}
+
+
+// file private
+final class ImmutableMapping implements HttpServletMapping {
+
+    private final MappingMatch mappingMatch;
+    private final String matchValue;
+    private final String pattern;
+    private final String servletName;
+
+    ImmutableMapping(MappingMatch mappingMatch, String matchValue,
+                     String pattern, String servletName) {
+        this.mappingMatch = mappingMatch;
+        this.matchValue = matchValue;
+        this.pattern = pattern;
+        this.servletName = servletName;
+    }
+
+    @Override
+    public String getMatchValue() {
+        return matchValue;
+    }
+
+    @Override
+    public String getPattern() {
+        return pattern;
+    }
+
+    @Override
+    public String getServletName() {
+        return servletName;
+    }
+
+    @Override
+    public MappingMatch getMappingMatch() {
+        return mappingMatch;
+    }
+
+    @Override
+    public String toString() {
+        return "MappingImpl{" + "matchValue=" + matchValue
+                + ", pattern=" + pattern + ", servletName="
+                + servletName + ", mappingMatch=" + mappingMatch + '}';
+    }
+}